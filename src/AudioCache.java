@@ -0,0 +1,278 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Decodes the music tracks once and keeps them, so changing tracks reads nothing from disk.
+ * <p>
+ * Tracks are decoded on a background thread into the mixer's format, converting the sample rate
+ * and channels if the file's differ. {@code preload()} starts that work before the track is
+ * needed. The cache holds at most {@code maxBytes} of decoded sound; past that, the least recently
+ * used tracks are dropped. A track too long to fit at all is not decoded, and is streamed from
+ * its file instead, a small buffer at a time.
+ */
+public class AudioCache {
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final int FILE_BUFFER = 64 * 1024;
+
+    private final long maxBytes;
+    private final AudioFormat format;
+    private final ExecutorService executor;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true); // least recently used first
+    private long bytes;
+    private boolean closed;
+
+    /**
+     * Creates an AudioCache.
+     * @param format - the format to decode to, which must be 16 bit signed little-endian stereo.
+     * @param maxBytes - the most decoded sound to keep, in bytes.
+     */
+    public AudioCache(AudioFormat format, long maxBytes) {
+        this.format = format;
+        this.maxBytes = maxBytes;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Audio Loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts decoding a track in the background, if it is not already cached.
+     * @param path - path of the music file.
+     * @return A future that completes once the track is decoded, or could not be.
+     */
+    public CompletableFuture<Void> preload(String path) {
+        return entry(path).track.handle((track, e) -> null);
+    }
+
+    /**
+     * Stops decoding for good, ending the loader thread. A track not decoded by then never is, so
+     * its future never completes.
+     */
+    public synchronized void close() {
+        closed = true;
+        executor.shutdownNow();
+    }
+
+    /**
+     * Gets a track, decoding it in the background if it is not cached yet.
+     * @param path - path of the music file.
+     * @return A future for the track, which fails if the file cannot be played.
+     */
+    public CompletableFuture<Track> get(String path) {
+        Entry entry = entry(path);
+        return entry.track.whenComplete((track, e) -> {
+            if (e == null) return;
+            synchronized (this) {
+                if (entries.get(path) == entry) entries.remove(path); // let a fixed file be read next time
+            }
+        });
+    }
+
+    /**
+     * Finds the cached entry for a track, or starts decoding it.
+     */
+    private synchronized Entry entry(String path) {
+        Entry entry = entries.get(path);
+        if (entry != null) return entry;
+
+        Entry created = new Entry();
+        if (closed) {
+            created.track = new CompletableFuture<Track>(); // nothing is decoded after closing
+            return created;
+        }
+        entries.put(path, created);
+        created.track = CompletableFuture.supplyAsync(() -> decode(path), executor);
+        created.track.thenAccept(track -> loaded(path, created, track));
+        return created;
+    }
+
+    /** Runs on the loader thread once a track is decoded. Accounts for it and evicts old ones. */
+    private synchronized void loaded(String path, Entry entry, Track track) {
+        if (entries.get(path) != entry) return;
+        entry.bytes = track.pcm == null ? 0 : track.pcm.length;
+        bytes += entry.bytes;
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Entry> oldest = it.next();
+            if (oldest.getValue() == entry) continue; // never evict the track just asked for
+            bytes -= oldest.getValue().bytes;
+            it.remove();
+        }
+    }
+
+    /** Runs on the loader thread. Decodes a whole track, unless it is too long to keep. */
+    private Track decode(String path) {
+        File file = new File(path);
+        try {
+            long size = decodedSize(file);
+            if (size < 0 || size > maxBytes) return new Track(file, format, null);
+            try (InputStream in = open(file, format)) {
+                ByteArrayOutputStream pcm = new ByteArrayOutputStream((int) size);
+                in.transferTo(pcm);
+                return new Track(file, format, pcm.toByteArray());
+            }
+        } catch (IOException | UnsupportedAudioFileException | IllegalArgumentException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /** Works out how many bytes a file decodes to, from its header, or -1 if it does not say. */
+    private long decodedSize(File file) throws IOException, UnsupportedAudioFileException {
+        try (AudioInputStream probe = AudioSystem.getAudioInputStream(file)) {
+            long frames = probe.getFrameLength();
+            if (frames == AudioSystem.NOT_SPECIFIED) return -1;
+            return (long) Math.ceil(frames * format.getSampleRate() / probe.getFormat().getSampleRate()) * format.getFrameSize();
+        }
+    }
+
+    /**
+     * Opens a music file, decoded to a format.
+     * @param file - the music file.
+     * @param format - 16 bit signed little-endian stereo, at any sample rate.
+     * @return The decoded sound.
+     */
+    private static InputStream open(File file, AudioFormat format) throws IOException, UnsupportedAudioFileException {
+        if (!file.isFile()) throw new FileNotFoundException(file.getPath());
+        AudioInputStream source = AudioSystem.getAudioInputStream(new BufferedInputStream(new FileInputStream(file), FILE_BUFFER));
+        if (source.getFormat().matches(format)) return source;
+        AudioFormat from = source.getFormat();
+        AudioFormat pcm = new AudioFormat(from.getSampleRate(), 16, from.getChannels(), true, false);
+        AudioInputStream decoded = pcm.matches(from) ? source : AudioSystem.getAudioInputStream(pcm, source);
+        return new Converter(decoded, from.getChannels(), from.getSampleRate() / format.getSampleRate());
+    }
+
+    /**
+     * A music track, decoded or ready to stream.
+     */
+    public static class Track {
+        private final File file;
+        private final AudioFormat format;
+        private final byte[] pcm; // the whole track, or null if it is streamed from its file
+
+        private Track(File file, AudioFormat format, byte[] pcm) {
+            this.file = file;
+            this.format = format;
+            this.pcm = pcm;
+        }
+
+        /**
+         * Opens the track from the start. A decoded track is read from memory.
+         * @return The sound, in the cache's format.
+         */
+        public InputStream open() throws IOException {
+            if (pcm != null) return new ByteArrayInputStream(pcm);
+            try {
+                return AudioCache.open(file, format);
+            } catch (UnsupportedAudioFileException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    /** A cached track, or one still being decoded. Guarded by the cache. */
+    private static class Entry {
+        private CompletableFuture<Track> track;
+        private long bytes;
+    }
+
+    /**
+     * Converts 16 bit signed little-endian sound with any number of channels to stereo, changing
+     * the sample rate with linear interpolation.
+     */
+    private static class Converter extends InputStream {
+        private static final int BLOCK_FRAMES = 1024;
+
+        private final InputStream in;
+        private final int channels;
+        private final double step; // source frames per frame written
+        private final byte[] block;
+        private int blockFrames;
+        private int blockPos; // the next source frame in the block
+        private double fraction; // how far from {@code from} to {@code to} the next frame written is
+        private boolean started;
+        private boolean ended;
+        private final short[] from = new short[2];
+        private final short[] to = new short[2];
+
+        private Converter(InputStream in, int channels, double step) {
+            this.in = in;
+            this.channels = channels;
+            this.step = step;
+            this.block = new byte[BLOCK_FRAMES * channels * 2];
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        /** Writes whole frames only, so {@code len} should be a multiple of 4. */
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (!started) {
+                started = true;
+                if (!nextFrame(from)) ended = true;
+                else if (!nextFrame(to)) System.arraycopy(from, 0, to, 0, 2);
+                if (ended) return -1;
+            }
+            int written = 0;
+            while (len - written >= 4) {
+                while (fraction >= 1) {
+                    if (ended) return written > 0 ? written : -1;
+                    System.arraycopy(to, 0, from, 0, 2);
+                    if (!nextFrame(to)) {
+                        ended = true;
+                        System.arraycopy(from, 0, to, 0, 2);
+                    }
+                    fraction -= 1;
+                }
+                for (int c = 0; c < 2; c++) {
+                    int sample = (int) Math.round(from[c] + (to[c] - from[c]) * fraction);
+                    b[off + written++] = (byte) sample;
+                    b[off + written++] = (byte) (sample >> 8);
+                }
+                fraction += step;
+            }
+            return written;
+        }
+
+        /** Reads the next source frame as stereo, or returns false at the end. */
+        private boolean nextFrame(short[] frame) throws IOException {
+            if (blockPos >= blockFrames) {
+                int read = in.readNBytes(block, 0, block.length);
+                blockFrames = read / (channels * 2);
+                blockPos = 0;
+                if (blockFrames == 0) return false;
+            }
+            int i = blockPos++ * channels * 2;
+            frame[0] = (short) ((block[i] & 0xff) | (block[i + 1] << 8));
+            if (channels > 1) i += 2; // mono is played on both sides; past two channels, the rest are dropped
+            frame[1] = (short) ((block[i] & 0xff) | (block[i + 1] << 8));
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Plays every {@code MusicPlayer} of a game through one output line.
+ * <p>
+ * The mixer's audio thread opens the line, then mixes a small buffer at a time from each player
+ * that is playing, applying each one's volume, and writes the sum to the line. Several players
+ * can be heard at once, which is how one track crossfades into the next. The tracks themselves
+ * come from an {@code AudioCache}, so starting one reads nothing from disk once it is cached.
+ * <p>
+ * If there is no audio device, the mixer is silent and decodes nothing.
+ */
+public class AudioMixer {
+    /** The format everything is mixed in, and the tracks are decoded to. */
+    public static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true, false);
+    static final int CHUNK_FRAMES = 1024; // frames mixed at a time, about 23 ms
+    private static final int LINE_CHUNKS = 4; // chunks the line can hold before writes block
+
+    private final AudioCache cache = new AudioCache(FORMAT, AudioCache.DEFAULT_MAX_BYTES);
+    private final CompletableFuture<Boolean> lineOpened = new CompletableFuture<Boolean>(); // false if silent
+    private final ArrayList<MusicPlayer> players = new ArrayList<MusicPlayer>(); // guarded by this
+    private boolean closed; // guarded by this
+
+    /** Creates a mixer, opening its line in the background. */
+    public AudioMixer() {
+        Thread thread = new Thread(this::mix, "Audio Mixer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Starts decoding a track in the background, so it can start straight away later.
+     * @param path - path of the music file.
+     * @return A future that completes once the track is decoded, or straight away if the mixer is
+     * silent.
+     */
+    public CompletableFuture<Void> preload(String path) {
+        return lineOpened.thenCompose(open -> open ? cache.preload(path) : CompletableFuture.<Void>completedFuture(null));
+    }
+
+    /** Stops the mixer for good, ending its audio and loader threads and freeing its line. */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        cache.close();
+    }
+
+    /**
+     * Gets a track for a player, once the line is open. The future never completes if the mixer
+     * is silent, since nothing would be heard anyway.
+     */
+    CompletableFuture<AudioCache.Track> track(String path) {
+        return lineOpened.thenCompose(open -> open ? cache.get(path) : new CompletableFuture<AudioCache.Track>());
+    }
+
+    /** Adds a player, which is heard whenever it is playing. */
+    synchronized void add(MusicPlayer player) {
+        if (Boolean.FALSE.equals(lineOpened.getNow(null))) return; // silent, so it is never mixed
+        players.add(player);
+        notifyAll();
+    }
+
+    /** Wakes the audio thread, since a player may have started playing. */
+    synchronized void wake() {
+        notifyAll();
+    }
+
+    /** Runs on the audio thread. Opens the line, then mixes the players into it until closed. */
+    private void mix() {
+        SourceDataLine line;
+        try {
+            line = AudioSystem.getSourceDataLine(FORMAT);
+            line.open(FORMAT, CHUNK_FRAMES * FORMAT.getFrameSize() * LINE_CHUNKS);
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            System.err.println("ERROR: Audio not playing!");
+            e.printStackTrace();
+            lineOpened.complete(false);
+            return;
+        }
+        lineOpened.complete(true);
+
+        int[] sum = new int[CHUNK_FRAMES * 2];
+        byte[] out = new byte[CHUNK_FRAMES * FORMAT.getFrameSize()];
+        ArrayList<MusicPlayer> playing = new ArrayList<MusicPlayer>();
+        try {
+            while (awaitPlaying(line, playing)) {
+                Arrays.fill(sum, 0);
+                for (MusicPlayer player : playing) {
+                    if (!player.mixInto(sum, CHUNK_FRAMES)) remove(player);
+                }
+                for (int i = 0; i < sum.length; i++) {
+                    int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sum[i]));
+                    out[2 * i] = (byte) sample;
+                    out[2 * i + 1] = (byte) (sample >> 8);
+                }
+                line.write(out, 0, out.length); // blocks while the line is full
+            }
+        } finally {
+            line.close();
+        }
+    }
+
+    /**
+     * Runs on the audio thread. Waits until a player is playing, stopping the line while none are.
+     * @param playing - filled with the players to mix.
+     * @return False once the mixer has been closed.
+     */
+    private boolean awaitPlaying(SourceDataLine line, ArrayList<MusicPlayer> playing) {
+        while (true) {
+            synchronized (this) {
+                if (closed) return false;
+                playing.clear();
+                for (Iterator<MusicPlayer> it = players.iterator(); it.hasNext();) {
+                    MusicPlayer player = it.next();
+                    if (player.isClosed()) {
+                        it.remove();
+                        player.release();
+                    } else if (player.isAudible()) {
+                        playing.add(player);
+                    }
+                }
+                if (!playing.isEmpty()) break;
+                if (!line.isRunning()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return false;
+                    }
+                    continue;
+                }
+            }
+            line.drain(); // let the last of the sound be heard, without holding up the players
+            line.stop();
+        }
+        line.start();
+        return true;
+    }
+
+    /** Runs on the audio thread. Removes a player that has ended or been closed. */
+    private void remove(MusicPlayer player) {
+        synchronized (this) {
+            players.remove(player);
+        }
+        player.release();
+    }
+}
@@ -1,4 +1,5 @@
 public class Character implements java.io.Serializable{
+    private static final long serialVersionUID = 4624480585189781927L;
     private String name;
     private String catchphrase;
 
@@ -0,0 +1,304 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The commands the player has typed, kept across runs of the game.
+ * <p>
+ * The newest {@code capacity} commands are kept in a ring buffer. Each command has a sequence
+ * number, which keeps counting up as old commands are dropped, so a position in the history stays
+ * valid while new commands are added. Commands are also appended to a file, one per line, by a
+ * background thread. The file is rewritten with just the kept commands when it has grown to twice
+ * the capacity, and the history is read back from it when the game starts. Nothing waits for that:
+ * until the file is read, the history is empty, and commands added meanwhile are kept aside and
+ * added after the ones from the file.
+ * <p>
+ * {@code search()} finds the newest command containing some text. Every three-letter sequence in a
+ * command is indexed, so a search only looks at the commands that share the rarest of the query's
+ * sequences, and stays fast however long the history is. Dropped commands are cleared out of the
+ * index by rebuilding it on the background thread, so adding a command never has to.
+ */
+public class CommandHistory {
+    public static final int DEFAULT_CAPACITY = 100000;
+    private static final int GRAM = 3; // length of the indexed letter sequences
+
+    private final Path file;
+    private final int capacity;
+    private final String[] entries;
+    private final ExecutorService writer;
+    private HashMap<Long, Postings> index = new HashMap<Long, Postings>();
+    private boolean loaded; // whether the file has been read
+    private ArrayList<String> early = new ArrayList<String>(); // commands added before it was
+    private int end; // sequence number of the next command
+    private int indexedFrom; // the index may still refer to commands from here on
+    private boolean reindexing; // whether a rebuild of the index is queued
+    private int fileLines; // lines in the file, guarded by the writer thread
+    private BufferedWriter out; // only used on the writer thread
+
+    /**
+     * Creates a CommandHistory, reading the commands saved in {@code filePath} in the background.
+     * @param filePath - path of the history file, created when the first command is added.
+     * @param capacity - the most commands to keep.
+     */
+    public CommandHistory(String filePath, int capacity) {
+        this.file = Path.of(filePath);
+        this.capacity = capacity;
+        this.entries = new String[capacity];
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "History Writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.execute(this::load);
+    }
+
+    /**
+     * Gets the sequence number of the oldest command kept.
+     * @return The sequence number.
+     */
+    public synchronized int start() {
+        return oldest();
+    }
+
+    /**
+     * Gets the sequence number the next command will have, one past the newest.
+     * @return The sequence number.
+     */
+    public synchronized int end() {
+        return end;
+    }
+
+    /**
+     * Gets a command.
+     * @param seq - its sequence number, from {@code start()} up to {@code end()}.
+     * @return The command.
+     */
+    public synchronized String get(int seq) {
+        if (seq < oldest() || seq >= end) throw new IndexOutOfBoundsException(seq + " is not in the history");
+        return entries[seq % capacity];
+    }
+
+    /**
+     * Adds a command to the history and to the history file. Blank commands are ignored.
+     * @param command - the command as it was typed.
+     */
+    public synchronized void add(String command) {
+        if (command.isBlank()) return;
+        if (loaded) remember(command);
+        else early.add(command);
+        writer.execute(() -> append(command));
+    }
+
+    /**
+     * Finds the newest command before {@code before} that contains {@code query}, ignoring case.
+     * @param query - the text to look for.
+     * @param before - the sequence number to search back from, exclusive.
+     * @return The sequence number of the command found, or -1 if there is none.
+     */
+    public synchronized int search(String query, int before) {
+        if (query.isEmpty()) return -1;
+        String text = query.toLowerCase();
+        int start = oldest();
+        before = Math.min(before, end);
+        if (text.length() < GRAM) {
+            for (int seq = before - 1; seq >= start; seq--) {
+                if (entries[seq % capacity].toLowerCase().contains(text)) return seq;
+            }
+            return -1;
+        }
+
+        Postings rarest = null;
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            Postings postings = index.get(gram(text, i));
+            if (postings == null) return -1; // no command has this sequence, so none can match
+            if (rarest == null || postings.size < rarest.size) rarest = postings;
+        }
+        for (int i = rarest.indexBefore(before); i >= 0; i--) {
+            int seq = rarest.seqs[i];
+            if (seq < start) break;
+            if (entries[seq % capacity].toLowerCase().contains(text)) return seq;
+        }
+        return -1;
+    }
+
+    private int oldest() {
+        return Math.max(0, end - capacity);
+    }
+
+    /** Adds a command to the ring buffer and the index. Caller holds the lock. */
+    private void remember(String command) {
+        entries[end % capacity] = command;
+        addPostings(index, command, end);
+        end++;
+        // Commands that have been dropped are still in the index; rebuild it once per lap.
+        if (!reindexing && oldest() - indexedFrom >= capacity) {
+            reindexing = true;
+            writer.execute(this::reindex);
+        }
+    }
+
+    /**
+     * Runs on the writer thread. Rebuilds the index from the commands still kept, without holding
+     * the lock while it does, then swaps it in. Searches use the old index until then; it only has
+     * extra entries, which they skip.
+     */
+    private void reindex() {
+        int from;
+        String[] kept;
+        synchronized (this) {
+            from = oldest();
+            kept = new String[end - from];
+            for (int seq = from; seq < end; seq++) kept[seq - from] = entries[seq % capacity];
+        }
+        HashMap<Long, Postings> rebuilt = new HashMap<Long, Postings>();
+        for (int i = 0; i < kept.length; i++) {
+            addPostings(rebuilt, kept[i], from + i);
+        }
+        synchronized (this) {
+            for (int seq = Math.max(from + kept.length, oldest()); seq < end; seq++) {
+                addPostings(rebuilt, entries[seq % capacity], seq); // added while rebuilding
+            }
+            index = rebuilt;
+            indexedFrom = from;
+            reindexing = false;
+        }
+    }
+
+    /** Indexes every letter sequence of a command under its sequence number. */
+    private static void addPostings(HashMap<Long, Postings> index, String command, int seq) {
+        String text = command.toLowerCase();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            index.computeIfAbsent(gram(text, i), k -> new Postings()).add(seq);
+        }
+    }
+
+    private static long gram(String text, int i) {
+        return ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+    }
+
+    /**
+     * Runs on the writer thread, before any command is appended. Reads the history file, keeping
+     * the newest commands, and indexes them before taking the lock to put them in place.
+     */
+    private void load() {
+        ArrayDeque<String> kept = new ArrayDeque<String>(Math.min(capacity, 1024));
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                fileLines++;
+                if (line.isBlank()) continue;
+                if (kept.size() == capacity) kept.removeFirst();
+                kept.addLast(line);
+            }
+        } catch (NoSuchFileException e) {
+        } catch (IOException e) {
+            System.err.println("ERROR: Could not read the command history!");
+        }
+        String[] commands = kept.toArray(new String[0]);
+        HashMap<Long, Postings> built = new HashMap<Long, Postings>();
+        for (int seq = 0; seq < commands.length; seq++) {
+            addPostings(built, commands[seq], seq);
+        }
+        synchronized (this) {
+            System.arraycopy(commands, 0, entries, 0, commands.length);
+            index = built;
+            end = commands.length;
+            loaded = true;
+            for (String command : early) remember(command);
+            early = null;
+        }
+        if (fileLines > 2 * capacity) writer.execute(this::compact);
+    }
+
+    /** Runs on the writer thread. Appends a command to the file. */
+    private void append(String command) {
+        try {
+            if (out == null) {
+                File parent = file.toAbsolutePath().getParent().toFile();
+                parent.mkdirs();
+                out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            out.write(command);
+            out.newLine();
+            out.flush();
+            if (++fileLines > 2 * capacity) compact();
+        } catch (IOException e) {
+            System.err.println("ERROR: Could not save the command history!");
+            closeFile();
+        }
+    }
+
+    /** Runs on the writer thread. Rewrites the file with only the commands still kept. */
+    private void compact() {
+        closeFile();
+        String[] kept;
+        synchronized (this) {
+            kept = new String[end - oldest()];
+            for (int seq = oldest(); seq < end; seq++) kept[seq - oldest()] = entries[seq % capacity];
+        }
+        Path temp = Path.of(file + ".tmp");
+        try {
+            try (BufferedWriter rewrite = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (String command : kept) {
+                    rewrite.write(command);
+                    rewrite.newLine();
+                }
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            fileLines = kept.length;
+        } catch (IOException e) {
+            System.err.println("ERROR: Could not save the command history!");
+        }
+    }
+
+    private void closeFile() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException e) {
+        }
+        out = null;
+    }
+
+    /** The sequence numbers of the commands containing one letter sequence, oldest first. */
+    private static class Postings {
+        private int[] seqs = new int[4];
+        private int size;
+
+        private void add(int seq) {
+            if (size > 0 && seqs[size - 1] == seq) return; // the sequence appears twice in the command
+            if (size == seqs.length) seqs = Arrays.copyOf(seqs, size * 2);
+            seqs[size++] = seq;
+        }
+
+        /** Finds the position of the last sequence number below {@code seq}, or -1. */
+        private int indexBefore(int seq) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (seqs[mid] < seq) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo - 1;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+import java.io.IOException;
+
+/**
+ * Thrown when a save file fails its integrity checks, for example because it was truncated
+ * by a crash or damaged on disk.
+ */
+public class CorruptSaveException extends IOException {
+    public CorruptSaveException(String message) {
+        super(message);
+    }
+}
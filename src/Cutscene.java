@@ -0,0 +1,125 @@
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cutscene written as a timeline of steps, each an action run after a pause.
+ * <p>
+ * The pauses are timed by one scheduler thread shared by every game, so they can be cut short: a
+ * cutscene can be fast-forwarded, which makes the remaining steps due straight away. The steps
+ * themselves run on the thread that plays the cutscene, in {@code Playback.run()}, so a game's
+ * state and output are only ever touched by its own thread, and one game's slow output never
+ * holds up another's cutscene. That thread waits in {@code run()} until the cutscene ends.
+ */
+public class Cutscene {
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Cutscene Scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ArrayList<Step> steps = new ArrayList<Step>();
+    private long pause;
+
+    /**
+     * Adds a pause before the next step.
+     * @param millis - how long to pause, in milliseconds.
+     * @return This cutscene.
+     */
+    public Cutscene pause(long millis) {
+        pause += millis;
+        return this;
+    }
+
+    /**
+     * Adds a step that runs after the pauses added before it.
+     * @param action - what the step does, usually printing a few lines.
+     * @return This cutscene.
+     */
+    public Cutscene then(Runnable action) {
+        steps.add(new Step(pause, action));
+        pause = 0;
+        return this;
+    }
+
+    /**
+     * Gets the cutscene ready to play. Nothing happens until {@code run()} is called.
+     * @param skip - whether to run every step straight away, without pauses.
+     * @return The playback, which can be run and fast-forwarded.
+     */
+    public Playback play(boolean skip) {
+        if (pause > 0) then(() -> {}); // a pause at the end still has to be waited out
+        return new Playback(new ArrayList<Step>(steps), skip);
+    }
+
+    /** A cutscene being played. */
+    public static class Playback {
+        private final ArrayList<Step> steps;
+        private int due; // steps whose pause is over; guarded by this
+        private boolean skipping; // guarded by this
+        private ScheduledFuture<?> pending; // the pause being timed; guarded by this
+
+        private Playback(ArrayList<Step> steps, boolean skip) {
+            this.steps = steps;
+            this.skipping = skip;
+        }
+
+        /**
+         * Ends the pause being waited out, and skips the rest, so the remaining steps run as soon
+         * as possible. Can be called from any thread.
+         */
+        public synchronized void fastForward() {
+            if (skipping) return;
+            skipping = true;
+            // If the wait could not be cancelled, it is already ending and makes its step due
+            if (pending != null && pending.cancel(false)) release();
+        }
+
+        /**
+         * Runs the steps on the calling thread, each once its pause is over, and returns after
+         * the last one.
+         * @throws RuntimeException If a step throws one, the rest are not run.
+         */
+        public void run() {
+            for (int ran = 0; ran < steps.size(); ran++) {
+                awaitDue(ran);
+                steps.get(ran).action.run();
+            }
+        }
+
+        /** Starts timing the pause before step {@code index}, then waits until it is over. */
+        private synchronized void awaitDue(int index) {
+            Step step = steps.get(index);
+            if (step.pause > 0 && !skipping) pending = SCHEDULER.schedule(this::release, step.pause, TimeUnit.MILLISECONDS);
+            else release();
+            boolean interrupted = false;
+            while (due <= index) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+
+        /** Makes the next step due. Runs on the scheduler thread once a pause is over. */
+        private synchronized void release() {
+            pending = null;
+            due++;
+            notifyAll();
+        }
+    }
+
+    private static class Step {
+        private final long pause;
+        private final Runnable action;
+
+        private Step(long pause, Runnable action) {
+            this.pause = pause;
+            this.action = action;
+        }
+    }
+}
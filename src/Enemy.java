@@ -8,13 +8,15 @@ import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
-public class Enemy extends Character{
+public class Enemy extends Character implements Cloneable {
+    private static final long serialVersionUID = 252780411548540883L;
     private int health;
     private int damageMin;
     private int damageMax;
     private ArrayList<String> messages;
     private ArrayList<String> aliases;
     private boolean isDead;
+    private int version;
 
     public Enemy(String name, String catchphrase, int health, int damageMin, int damageMax, ArrayList<String> messages, ArrayList<String> aliases){
         super(name, catchphrase);
@@ -31,11 +33,34 @@ public class Enemy extends Character{
         this.health = 10;
     }
 
+    /**
+     * Returns a copy of this enemy, keeping its current health and state.
+     * The message and alias lists are never modified, so they are shared.
+     * @return The copy.
+     */
+    public Enemy copy() {
+        try {
+            return (Enemy) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Returns a counter that goes up every time this object changes, so snapshots can tell
+     * whether an earlier copy of it is still up to date.
+     */
+    public int getVersion() {
+      return version;
+    }
+
     public void setHealth(int health){
+        version++;
         this.health = health;
     }
 
     public void attacked(int damage){
+        version++;
         health -= damage;
     }
 
@@ -44,6 +69,7 @@ public class Enemy extends Character{
     }
 
     public void setIsDead(boolean state){
+        version++;
         isDead = state;
     }
 
@@ -51,13 +77,22 @@ public class Enemy extends Character{
         return health;
     }
 
-    public int getDamage() {
-        return (int) (Math.random() * (damageMax - damageMin)) + damageMin;
+    /**
+     * Rolls the damage of this enemy's next attack.
+     * @param random - the session's random number generator.
+     * @return The damage, from {@code damageMin} up to but not including {@code damageMax}.
+     */
+    public int getDamage(GameRandom random) {
+        return random.nextInt(damageMin, damageMax);
     }
 
-    public String getHurtMessage() {
-        int num = (int) (Math.floor(Math.random() * messages.size()));
-        return messages.get(num);
+    /**
+     * Picks one of this enemy's attack messages.
+     * @param random - the session's random number generator.
+     * @return The message.
+     */
+    public String getHurtMessage(GameRandom random) {
+        return messages.get(random.nextInt(messages.size()));
     }
 
     public static JSONArray getEnemies() {
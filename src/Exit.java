@@ -1,7 +1,8 @@
 /**
  * Exit
  */
-public class Exit extends OpenableObject implements java.io.Serializable {
+public class Exit extends OpenableObject implements java.io.Serializable, Cloneable {
+  private static final long serialVersionUID = 9116410078646907818L;
   private String direction;
   private String adjacentRoom;
 
@@ -22,11 +23,23 @@ public class Exit extends OpenableObject implements java.io.Serializable {
     this.adjacentRoom = adjacentRoom;
   }
 
+  /**
+   * Returns a copy of this exit, keeping its current lock and open state.
+   */
+  public Exit copy() {
+    try {
+      return (Exit) clone();
+    } catch (CloneNotSupportedException e) {
+      throw new AssertionError(e);
+    }
+  }
+
   public String getDirection() {
     return direction;
   }
 
   public void setDirection(String direction) {
+    changed();
     this.direction = direction;
   }
 
@@ -35,6 +48,7 @@ public class Exit extends OpenableObject implements java.io.Serializable {
   }
 
   public void setAdjacentRoom(String adjacentRoom) {
+    changed();
     this.adjacentRoom = adjacentRoom;
   }
 
@@ -0,0 +1,121 @@
+/**
+ * The interface between the game and the player: where output is shown and commands are read.
+ * <p>
+ * {@code GUI} shows the game in a Swing window. {@code TerminalFrontend} plays it over standard
+ * input and output, without touching AWT, so the game can also run on a server or from a script.
+ */
+public interface Frontend {
+    /** The styles text can be printed in. Each frontend decides how to show them. */
+    enum Style {
+        PLAIN,
+        ECHO, // commands typed by the player
+        INFO,
+        ERROR
+    }
+
+    /** Shows the frontend, before anything is printed to it. */
+    void open();
+
+    /**
+     * Reads the next command, waiting until the player enters one.
+     * @return The command String.
+     */
+    String readCommand();
+
+    /** Prints a new line. */
+    void println();
+
+    /**
+     * Prints a stream and adds a new line.
+     * @param x - to be printed
+     */
+    void println(Object x);
+
+    /**
+     * Prints a stream.
+     * @param x - to be printed
+     */
+    void print(Object x);
+
+    /**
+     * Prints a stream in a style.
+     * @param x - to be printed
+     * @param style - the style of the text
+     */
+    void printStyled(Object x, Style style);
+
+    /**
+     * Prints a stream in an error format and adds a new line.
+     * @param x - to be printed
+     */
+    void printerr(Object x);
+
+    /**
+     * Prints a stream in an info format and adds a new line.
+     * @param x - to be printed
+     */
+    void printInfo(Object x);
+
+    /**
+     * Prints a stream and adds a new line, without scrolling down.
+     * @param x - to be printed
+     */
+    void printlnNoScroll(Object x);
+
+    /** Prints a new line without scrolling down. */
+    void printlnNoScroll();
+
+    /**
+     * Prints an image.
+     * @param src - path of the image file.
+     */
+    void printImg(String src);
+
+    /** Fully clears the output. */
+    void reset();
+
+    /**
+     * Centers the output, or aligns it to the left again.
+     * @param state - true to center.
+     */
+    void centerText(boolean state);
+
+    /**
+     * Slowly scrolls the output down to the bottom, once everything printed so far is shown.
+     * @param milisSteps - how long to take per pixel scrolled.
+     */
+    void scrollSmooth(int milisSteps);
+
+    /**
+     * Sets what the player's skip key does, or {@code null} when there is nothing to skip.
+     * @param action - the action.
+     */
+    void onSkip(Runnable action);
+
+    /**
+     * Enables or disables cutscene mode, in which the player cannot enter commands.
+     * @param state - true to enable.
+     */
+    void cutsceneMode(boolean state);
+
+    /**
+     * Specifies whether or not commands entered are echoed to the output.
+     * @param state - true to echo them.
+     */
+    void commandsPrinted(boolean state);
+
+    /** Resets the command memory. */
+    void resetCommands();
+
+    /**
+     * Gets the number of available text lines.
+     * @return The number of lines.
+     */
+    int textLines();
+
+    /**
+     * Gives the frontend the game it shows, so it can show the game's status.
+     * @param game - the game.
+     */
+    void sendGameObj(Game game);
+}
@@ -4,7 +4,6 @@ import javax.swing.*;
 
 import javax.imageio.ImageIO;
 import javax.swing.plaf.basic.BasicScrollBarUI;
-import static org.awaitility.Awaitility.await;
 import java.awt.Color;
 import java.awt.Container;
 import java.awt.Cursor;
@@ -12,64 +11,115 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.BorderLayout;
 import java.awt.Insets;
+import java.awt.KeyboardFocusManager;
 import java.awt.event.KeyListener;
-import java.awt.Button;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.awt.event.KeyEvent;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 /**
  * The GUI represents the interface between the program and the user.
  * <p>
- * A GUI object creates a frame that the user interacts with to play the game.
+ * A GUI object creates a frame that the user interacts with to play the game. It is the
+ * {@code Frontend} used when there is a display; see {@code TerminalFrontend} for the other.
  * <p>
- * The GUI class is a singleton class, meaning the class has only one object. 
- * To access the GUI object, the constructor is not used. Instead, a call to {@code GUI.getGUI()}
- * returns the GUI object of the singleton class.
+ * Each GUI shows one game, in its own window.
  * @author Stefano
  */
-public class GUI {
+public class GUI implements Frontend {
     //instance variables
     private JFrame frame;
     private JPanel gameContainer;
-    private String inputCommand;
-    private static StyleContext styleContext;
+    private static final int MAX_QUEUED_COMMANDS = 64;
+    private final BlockingQueue<String> inputCommands = new ArrayBlockingQueue<String>(MAX_QUEUED_COMMANDS); // typed but not yet read
+    private static final StyleContext STYLES = StyleContext.getDefaultStyleContext();
+    private static final ConcurrentHashMap<Long, AttributeSet> palette = new ConcurrentHashMap<Long, AttributeSet>(); // see stylize()
+    private static final AttributeSet ECHO_STYLE = stylize(false, false, Color.YELLOW); // commands typed by the player
+    private static final AttributeSet INFO_STYLE = stylize(true, false, Color.LIGHT_GRAY);
+    private static final AttributeSet ERROR_STYLE = stylize(false, true, new Color(200, 50, 20));
     private StyledDocument outputDoc;
     private JTextField input;
     private JScrollPane scroll;
     private JPanel inputContainer;
     private JTextArea gameInfo;
+    private static final int FRAME_MS = 16;
+    private volatile String status = ""; // the newest status bar text, built on the game thread
+    private final AtomicBoolean statusPending = new AtomicBoolean();
+    private final Timer statusTimer = createStatusTimer();
+    private final ArrayList<Run> pendingOutput = new ArrayList<Run>(); // output not yet in the document, guarded by itself
+    private boolean scrollPending; // guarded by pendingOutput
+    private boolean outputPending; // guarded by pendingOutput
+    private final Timer outputTimer = createOutputTimer();
+    private static final int DEFAULT_SCROLLBACK = 2000; // paragraphs kept in the output
+    private static final int EVICT_BATCH = 200; // paragraphs removed at a time once over the limit
+    private volatile int scrollback = DEFAULT_SCROLLBACK;
+    private static final String IMAGE_DIRECTORY = "data/images";
+    private volatile Runnable skipAction; // fast-forwards the cutscene being played, if any
+    private Timer scrollAnimation; // the running scrollSmooth() animation, only used on the EDT
+    private final ImageCache images = new ImageCache(ImageCache.DEFAULT_MAX_BYTES);
     private boolean isErrored;
     private boolean commandsPrinted;
     private KeyListener inputListener;
-
-    //class variables
-    private static GUI gui;
-    private static Game gameObj;
+    private static final String PROMPT = "> ";
+    private static final String HISTORY_NAME = "Command History.txt"; // kept in the state directory
+    private final CommandHistory history;
+    private JTextField prompt;
+    private int browsing = -1; // the history entry shown in the input box, or -1; only used on the EDT
+    private String inProgressCommand = ""; // what was typed before browsing or searching, only used on the EDT
+    private String searchQuery; // the reverse search being typed, or null; only used on the EDT
+    private int searchMatch; // the history entry the search last found
+
+    private volatile Game gameObj;
     private JTextPane output;
+    private final StartupTimer startup;
+    private final CountDownLatch windowCreated = new CountDownLatch(1);
 
-    /** The private constructor for the singleton GUI class.*/
-    private GUI(){}
+    /** Creates a GUI. Its window is shown by {@code open()}. */
+    public GUI() {
+        this(new StartupTimer(false), Game.DEFAULT_STATE_DIRECTORY);
+    }
 
     /**
-     * getGUI is an accessor method of the GUI class that returns the singleton object of the class.
-     * <p>
-     * getGUI is the ONLY way to create a GUI object. The constructor for the GUI class is private,
-     * as is the case in a singleton class, so to access the singleton GUI object of the GUI class 
-     * one must call getGUI.
-     * @return A {@ GUI} object.
+     * Creates a GUI, timing how long its window takes to create.
+     * @param startup - records the window's creation as a startup phase.
+     * @param stateDirectory - the game's state directory, where the command history is kept.
      */
-    public static GUI getGUI() {
-        if (gui == null) gui = new GUI();
-        return gui;
+    public GUI(StartupTimer startup, String stateDirectory) {
+        this.startup = startup;
+        this.history = new CommandHistory(new File(stateDirectory, HISTORY_NAME).getPath(), CommandHistory.DEFAULT_CAPACITY);
     }
 
-    public void createWindow() {
-        //Set up window
+    /**
+     * Shows the window. It is created on the EDT, so this returns straight away and the game can
+     * load while the window is being built; anything printed meanwhile is shown once it is up.
+     */
+    public void open() {
         System.setProperty("awt.useSystemAAFontSettings","on");
         System.setProperty("swing.aatext", "true");
+        append("\nStarting...\n\n", INFO_STYLE);
+        long started = startup.start();
+        SwingUtilities.invokeLater(() -> {
+            try {
+                createWindow();
+            } finally {
+                windowCreated.countDown();
+                startup.end("create window", started);
+            }
+        });
+    }
+
+    /** Runs on the EDT. Creates and shows the window. */
+    private void createWindow() {
+        //Set up window
         frame = new JFrame("Adventure Into Tableland - Trials of The Whisperer");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setSize(1000, 550);
@@ -81,8 +131,6 @@ public class GUI {
         frame.setLocationRelativeTo(null);
         Container pane = frame.getContentPane();
         pane.setBackground(Color.BLACK);
-        styleContext = new StyleContext();
-        styleContext.addStyle("", null);
         commandsPrinted = true;
 
 
@@ -175,57 +223,62 @@ public class GUI {
         input.setForeground(Color.LIGHT_GRAY);
         //add key listener for the input box to check when a command is entered
         inputListener = new KeyListener(){
-            ArrayList<String> commandsEntered = new ArrayList<String>();
-            int commandIndex = 0;
-            String inProgressCommand = "";
-            boolean isBrowsing = false;
-
             @Override
             public void keyPressed(KeyEvent e){
+                stopScrollAnimation(true);
+                if (searchQuery != null && !searchKeyPressed(e)) return;
                 if (e.getKeyCode() == KeyEvent.VK_ENTER){
                     String command = input.getText().trim();
-                    inputCommand = command;
-                    commandIndex = commandsEntered.size();
-                    commandsEntered.add(command);
-                    commandIndex++;
+                    if (!inputCommands.offer(command)){
+                        frame.getToolkit().beep(); // the game is far behind; keep the text so it can be sent again
+                        return;
+                    }
+                    history.add(command);
+                    browsing = -1;
                     inProgressCommand = "";
 
                     input.setText("");
                     if (commandsPrinted){
                         append("\n> ", null);
-                        append(command + "\n", stylize(false, false, Color.YELLOW));
+                        append(command + "\n", ECHO_STYLE);
                         flush();
                     }
                 }
-                if (e.getKeyCode() == KeyEvent.VK_UP && commandIndex > 0){
-                    commandIndex--; 
-                    if (!isBrowsing) inProgressCommand = input.getText();
-                    input.setText(commandsEntered.get(commandIndex));
-                    isBrowsing = true;
-                } 
-                else if (e.getKeyCode() == KeyEvent.VK_DOWN && commandIndex < commandsEntered.size() - 1){
-                    commandIndex++;
-                    input.setText(commandsEntered.get(commandIndex));
+                else if (e.getKeyCode() == KeyEvent.VK_R && e.isControlDown()){
+                    e.consume();
+                    startSearch();
                 }
-                else if (e.getKeyCode() == KeyEvent.VK_DOWN && commandIndex == commandsEntered.size() - 1){
-                    commandIndex++;
-                    input.setText(inProgressCommand);
-                    isBrowsing = false;
+                else if (e.getKeyCode() == KeyEvent.VK_UP){
+                    int seq = browsing < 0 ? history.end() : browsing;
+                    if (seq <= history.start()) return;
+                    if (browsing < 0) inProgressCommand = input.getText();
+                    browsing = seq - 1;
+                    input.setText(history.get(browsing));
+                }
+                else if (e.getKeyCode() == KeyEvent.VK_DOWN && browsing >= 0){
+                    browsing++;
+                    if (browsing < history.end()) {
+                        input.setText(history.get(browsing));
+                    } else {
+                        browsing = -1;
+                        input.setText(inProgressCommand);
+                    }
                 }
                 else if (e.getKeyCode() == KeyEvent.VK_ESCAPE){
                     input.setText("");
                     inProgressCommand = "";
-                }
-                else if (e.getKeyCode() == KeyEvent.VK_F23){
-                    commandsEntered = new ArrayList<String>();
-                    commandIndex = 0;
-                    inProgressCommand = "";
-                    isBrowsing = false;
+                    browsing = -1;
                 }
             }
 
             @Override
             public void keyTyped(KeyEvent e) {
+                if (searchQuery == null) return;
+                e.consume(); // typed letters go to the search, not the input box
+                char c = e.getKeyChar();
+                if (c == KeyEvent.CHAR_UNDEFINED || java.lang.Character.isISOControl(c)) return;
+                searchQuery += c;
+                search(history.end());
             }
 
             @Override
@@ -236,45 +289,63 @@ public class GUI {
 
 
         //add text area for the ">"
-        JTextField cmd = new JTextField("> ");
-        cmd.setEditable(false);
-        cmd.setEnabled(false);
-        cmd.setFont(new Font("Consolas", Font.PLAIN, 14));
-        cmd.setForeground(Color.LIGHT_GRAY);
-        cmd.setBackground(Color.BLACK);
-        cmd.setSelectionColor(Color.WHITE);
-        cmd.setBorder(BorderFactory.createEmptyBorder());
+        prompt = new JTextField(PROMPT);
+        prompt.setEditable(false);
+        prompt.setEnabled(false);
+        prompt.setFont(new Font("Consolas", Font.PLAIN, 14));
+        prompt.setForeground(Color.LIGHT_GRAY);
+        prompt.setBackground(Color.BLACK);
+        prompt.setSelectionColor(Color.WHITE);
+        prompt.setBorder(BorderFactory.createEmptyBorder());
         
 
         //add container for the ">" and the text input area
         inputContainer = new JPanel();
         inputContainer.setLayout(new BorderLayout());
         inputContainer.add(input, BorderLayout.CENTER);
-        inputContainer.add(cmd, BorderLayout.LINE_START);
+        inputContainer.add(prompt, BorderLayout.LINE_START);
         inputContainer.setMaximumSize(new Dimension(1500, 40));
         gameContainer.add(inputContainer);
 
 
+        //let Enter, Space or Escape fast-forward cutscenes, even while the input box is disabled
+        KeyboardFocusManager.getCurrentKeyboardFocusManager().addKeyEventDispatcher(e -> {
+            Runnable skip = skipAction;
+            int key = e.getKeyCode();
+            if (skip != null && e.getID() == KeyEvent.KEY_PRESSED && (key == KeyEvent.VK_ENTER || key == KeyEvent.VK_SPACE || key == KeyEvent.VK_ESCAPE)) {
+                skip.run();
+            }
+            return false;
+        });
+
         //initialize the frame
         pane.add(gameContainer);
         frame.setVisible(true);
         input.requestFocusInWindow();
-        append("\nStarting...\n\n", stylize(true, false, Color.LIGHT_GRAY));
+        preloadImages();
         if (isErrored){
-            GameError.fileNotFound("data/images/icon.png");
+            GameError.fileNotFound(this, "data/images/icon.png");
         } 
     }
 
     /**
-     * Reads the command input from the GUI.
+     * Reads the command input from the GUI, waiting until the player enters one.
+     * Commands typed while the game is busy are queued and returned in order.
      * @return The command String.
      */
     public String readCommand() {
-        String command;
-        await().forever().until(() -> inputCommand != null);
-        command = inputCommand;
-        inputCommand = null;
-        return command;
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return inputCommands.take();
+                } catch (InterruptedException e) {
+                    interrupted = true; // there is no sensible command to return, so keep waiting
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -292,8 +363,52 @@ public class GUI {
     // }
 
     public void printImg(String src){
-        if (!new File(src).isFile()) GameError.fileNotFound(src);
-        printStyled("\n", iconStyle(src));
+        awaitWindow();
+        ImageIcon icon;
+        try {
+            icon = images.get(src, imageWidth());
+        } catch (FileNotFoundException e) {
+            GameError.fileNotFound(this, src);
+            return;
+        }
+        printStyled("\n", iconStyle(icon));
+    }
+
+    /**
+     * Starts decoding the game's images in the background, so they are ready the first time
+     * they are printed.
+     */
+    private void preloadImages() {
+        File[] files = new File(IMAGE_DIRECTORY).listFiles((dir, name) -> name.endsWith(".png") && !name.equals("icon.png"));
+        if (files == null) return;
+        for (File file : files) {
+            images.preload(IMAGE_DIRECTORY + "/" + file.getName(), imageWidth());
+        }
+    }
+
+    /**
+     * Waits until the window has been created by {@code open()}, for the few methods that need
+     * its size. Printing does not wait, since output is only added to the window on the EDT.
+     */
+    private void awaitWindow() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                windowCreated.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Gets the widest an image can be to fit in the output, or 0 if the output has not been laid out.
+     */
+    private int imageWidth() {
+        Insets insets = output.getInsets();
+        return Math.max(0, output.getWidth() - insets.left - insets.right);
     }
 
     //Below are all the print methods
@@ -302,7 +417,7 @@ public class GUI {
     public void println() {
         append("\n", null);
         flush();
-        gameInfo.setText(gameObj.getGUIGameString());
+        updateStatus();
     }
 
     /**
@@ -312,7 +427,7 @@ public class GUI {
     public void println(int x) {
         append(x + "\n",  null);
         flush();
-        gameInfo.setText(gameObj.getGUIGameString());
+        updateStatus();
     }
 
     /**
@@ -322,7 +437,7 @@ public class GUI {
     public void println(boolean x) {
         append(x + "\n", null);
         flush();
-        gameInfo.setText(gameObj.getGUIGameString());
+        updateStatus();
     }
 
     /**
@@ -332,7 +447,7 @@ public class GUI {
     public void println(Object x) {
         append(x + "\n", null);
         flush();
-        gameInfo.setText(gameObj.getGUIGameString());
+        updateStatus();
     }
 
     /**
@@ -342,7 +457,7 @@ public class GUI {
     public void println(double x) {
         append(x + "\n", null);
         flush();
-        gameInfo.setText(gameObj.getGUIGameString());
+        updateStatus();
     }
 
     /**
@@ -352,7 +467,7 @@ public class GUI {
     public void print(int x) {
         append(x + "", null);
         flush();
-        gameInfo.setText(gameObj.getGUIGameString());
+        updateStatus();
     }
 
     /**
@@ -362,7 +477,7 @@ public class GUI {
     public void print(boolean x) {
         append(x + "", null);
         flush();
-        gameInfo.setText(gameObj.getGUIGameString());
+        updateStatus();
     }
 
     /**
@@ -372,7 +487,7 @@ public class GUI {
     public void print(double x) {
         append(x + "", null);
         flush();
-        gameInfo.setText(gameObj.getGUIGameString());
+        updateStatus();
     }
 
     /**
@@ -382,20 +497,39 @@ public class GUI {
     public void print(Object x) {
         append(x + "", null);
         flush();
-        gameInfo.setText(gameObj.getGUIGameString());
+        updateStatus();
     }
 
     /**
      * Prints a stream to the output JTextArea.
      * <p>
-     * To get a Style for stylizing the text, call {@code GUI.stylize()}.
+     * To get a style for stylizing the text, call {@code GUI.stylize()}.
      * @param x - to be printed
-     * @param style - the Style for the text
+     * @param style - the attributes for the text
      */
-    public void printStyled(Object x, Style style) {
+    public void printStyled(Object x, AttributeSet style) {
         append(x + "", style);
         flush();
-        gameInfo.setText(gameObj.getGUIGameString());
+        updateStatus();
+    }
+
+    /**
+     * Prints a stream to the output JTextArea in one of the frontend styles.
+     * @param x - to be printed
+     * @param style - the style of the text
+     */
+    public void printStyled(Object x, Style style) {
+        printStyled(x, attributes(style));
+    }
+
+    /** Gets the attributes used for a frontend style. */
+    private static AttributeSet attributes(Style style) {
+        switch (style) {
+            case ECHO: return ECHO_STYLE;
+            case INFO: return INFO_STYLE;
+            case ERROR: return ERROR_STYLE;
+            default: return null;
+        }
     }
 
     /**
@@ -403,7 +537,7 @@ public class GUI {
      * @param x - to be printed
      */
     public void printerr(Object x) {
-        append(x + "\n", stylize(false, true, new Color(200, 50, 20)));
+        append(x + "\n", ERROR_STYLE);
         flush();
     }
 
@@ -412,8 +546,8 @@ public class GUI {
      * @param x - to be printed
      */
     public void printInfo(Object x) {
-        append(x + "\n", stylize(true, false, Color.LIGHT_GRAY));
-        gameInfo.setText(gameObj.getGUIGameString());
+        append(x + "\n", INFO_STYLE);
+        updateStatus();
     }
 
     /**
@@ -422,7 +556,7 @@ public class GUI {
      */
     public void printlnNoScroll(Object x) {
         append(x + "\n", null);
-        gameInfo.setText(gameObj.getGUIGameString());
+        updateStatus();
     }
 
     /**
@@ -430,19 +564,38 @@ public class GUI {
      */
     public void printlnNoScroll() {
         append("\n", null);
-        gameInfo.setText(gameObj.getGUIGameString());
+        updateStatus();
     }
 
 
 
-    /** FLushes the output JTextArea by resetting the scrollbar position.*/
-    private void flush() {
-        SwingUtilities.invokeLater(new Runnable() {
-            public void run(){
-                scroll.getVerticalScrollBar().setValue(scroll.getVerticalScrollBar().getMaximum() - scroll.getVerticalScrollBar().getHeight());
-                scroll.getHorizontalScrollBar().setValue(scroll.getHorizontalScrollBar().getMaximum() - scroll.getHorizontalScrollBar().getHeight());
-            }
+    /**
+     * Rebuilds the status bar text if anything it shows has changed, and schedules it to be shown.
+     * The text is only rebuilt when the game reports a change, and the bar is repainted at most
+     * once per frame however many lines are printed in between.
+     */
+    private void updateStatus() {
+        if (gameObj == null || !gameObj.isStatusDirty()) return;
+        status = gameObj.getGUIGameString();
+        if (statusPending.compareAndSet(false, true)) statusTimer.start();
+    }
+
+    /** Creates the one-shot timer that shows the newest status bar text on the EDT. */
+    private Timer createStatusTimer() {
+        Timer timer = new Timer(FRAME_MS, e -> {
+            statusPending.set(false); // cleared first, so a change made while showing schedules another frame
+            gameInfo.setText(status);
         });
+        timer.setRepeats(false);
+        return timer;
+    }
+
+    /** FLushes the output JTextArea by resetting the scrollbar position once the pending output is shown.*/
+    private void flush() {
+        synchronized (pendingOutput) {
+            scrollPending = true;
+            scheduleOutput();
+        }
     } 
     
     /**
@@ -450,57 +603,173 @@ public class GUI {
      * @param x - to be printed
      */
     public void reset() {
-        try {
-            outputDoc.remove(0, outputDoc.getLength());
-        } catch (BadLocationException e) {
-            e.printStackTrace();
+        synchronized (pendingOutput) {
+            pendingOutput.clear(); // nothing waiting would survive the clear anyway
+            pendingOutput.add(new Run(doc -> doc.remove(0, doc.getLength())));
+            scrollPending = true;
+            scheduleOutput();
         }
-        flush();
     }
 
     /**
      * Appends text to a JTextPane.
+     * <p>
+     * The text is buffered and inserted on the EDT with the rest of the frame's output, merged
+     * with the text before it when they share the same attributes.
      * @param str - The string to add.
      * @param attr - The attributes for the text added.
      */
     private void append(String str, AttributeSet attr) {
+        synchronized (pendingOutput) {
+            Run last = pendingOutput.isEmpty() ? null : pendingOutput.get(pendingOutput.size() - 1);
+            if (last != null && last.text != null && last.attr == attr) last.text.append(str);
+            else pendingOutput.add(new Run(str, attr));
+            scheduleOutput();
+        }
+    }
+
+    /** Starts the output timer if it is not already waiting. The caller must hold pendingOutput. */
+    private void scheduleOutput() {
+        if (outputPending) return;
+        outputPending = true;
+        outputTimer.start();
+    }
+
+    /** Creates the one-shot timer that moves the buffered output into the document on the EDT. */
+    private Timer createOutputTimer() {
+        Timer timer = new Timer(FRAME_MS, e -> flushOutput());
+        timer.setRepeats(false);
+        return timer;
+    }
+
+    /** Runs on the EDT. Applies everything printed since the last frame, then scrolls once. */
+    private void flushOutput() {
+        ArrayList<Run> runs;
+        boolean scrollDown;
+        synchronized (pendingOutput) {
+            runs = new ArrayList<Run>(pendingOutput);
+            pendingOutput.clear();
+            scrollDown = scrollPending;
+            scrollPending = false;
+            outputPending = false;
+        }
+        trimScrollback(!scrollDown); // done first, while the layout from the last frame is still valid
+        for (Run run : runs) {
+            try {
+                run.apply(outputDoc);
+            } catch (BadLocationException e) {
+                e.printStackTrace();
+            }
+        }
+        if (scrollDown) {
+            stopScrollAnimation(false);
+            // Posted so it runs after the layout the inserts above have queued
+            SwingUtilities.invokeLater(() -> {
+                scroll.getVerticalScrollBar().setValue(scroll.getVerticalScrollBar().getMaximum() - scroll.getVerticalScrollBar().getHeight());
+                scroll.getHorizontalScrollBar().setValue(scroll.getHorizontalScrollBar().getMaximum() - scroll.getHorizontalScrollBar().getHeight());
+            });
+        }
+    }
+
+    /**
+     * Sets how many paragraphs of output are kept. Older ones are removed from the top, in batches.
+     * @param paragraphs - the number of paragraphs to keep, at least {@code EVICT_BATCH}.
+     */
+    public void setScrollback(int paragraphs) {
+        scrollback = Math.max(EVICT_BATCH, paragraphs);
+    }
+
+    /**
+     * Runs on the EDT. Removes the oldest paragraphs once the output is a whole batch over the
+     * scrollback limit, so memory and layout costs stop growing over a long session.
+     * @param keepPosition - whether to keep the text the player is looking at in place.
+     */
+    private void trimScrollback(boolean keepPosition) {
+        Element root = outputDoc.getDefaultRootElement();
+        int excess = root.getElementCount() - scrollback;
+        if (excess < EVICT_BATCH) return;
+        int end = root.getElement(excess).getStartOffset();
+        int shift = 0;
+        if (keepPosition) {
+            try {
+                Rectangle2D top = output.modelToView2D(end);
+                if (top != null) shift = (int) top.getY();
+            } catch (BadLocationException e) {
+            }
+        }
         try {
-            outputDoc.insertString(outputDoc.getLength(), str, attr);
+            outputDoc.remove(0, end);
         } catch (BadLocationException e) {
             e.printStackTrace();
+            return;
+        }
+        if (shift > 0) {
+            JScrollBar bar = scroll.getVerticalScrollBar();
+            bar.setValue(Math.max(0, bar.getValue() - shift));
+        }
+    }
+
+    /** A document change waiting to be applied on the EDT. */
+    private interface DocumentEdit {
+        void apply(StyledDocument doc) throws BadLocationException;
+    }
+
+    /** A run of text with one set of attributes, or another edit, waiting to be applied. */
+    private static class Run {
+        private final StringBuilder text;
+        private final AttributeSet attr;
+        private final DocumentEdit edit;
+
+        private Run(String text, AttributeSet attr) {
+            this.text = new StringBuilder(text);
+            this.attr = attr;
+            this.edit = null;
+        }
+
+        private Run(DocumentEdit edit) {
+            this.text = null;
+            this.attr = null;
+            this.edit = edit;
+        }
+
+        private void apply(StyledDocument doc) throws BadLocationException {
+            if (edit != null) edit.apply(doc);
+            else doc.insertString(doc.getLength(), text.toString(), attr);
         }
     }
 
     /**
      * Stylizes text for printing to the output JTextPane.
+     * <p>
+     * Each combination is built once and kept in a palette, and the sets are immutable, so the
+     * same object is returned every time and can be shared between threads.
      * @param italics - Specifies whether the text is italic or not.
      * @param bold - Specifies whether the text is bold or not.
      * @param textColour - Specifies the colour of the text.
-     * @return A {@code Style} with the specified properties.
+     * @return The attributes with the specified properties.
      */
-    public static Style stylize(boolean italics, boolean bold, Color textColour) {
-        if (styleContext == null) styleContext = new StyleContext();
-        styleContext.removeStyle("");
-        Style style = styleContext.addStyle("", null);
-        StyleConstants.setForeground(style, textColour);
-        StyleConstants.setBold(style, bold);
-        StyleConstants.setItalic(style, italics);
-        return style;
+    public static AttributeSet stylize(boolean italics, boolean bold, Color textColour) {
+        long key = ((long) textColour.getRGB() << 2) | (bold ? 2 : 0) | (italics ? 1 : 0);
+        return palette.computeIfAbsent(key, k -> {
+            AttributeSet style = STYLES.addAttribute(STYLES.getEmptySet(), StyleConstants.Foreground, textColour);
+            style = STYLES.addAttribute(style, StyleConstants.Bold, bold);
+            return STYLES.addAttribute(style, StyleConstants.Italic, italics);
+        });
     }
 
-    private Style iconStyle(String src) {
-        if (styleContext == null) styleContext = new StyleContext();
-        styleContext.removeStyle("");
-        Style style = styleContext.addStyle("", null);
-        StyleConstants.setIcon(style, new ImageIcon(src));
-        return style;
+    private AttributeSet iconStyle(ImageIcon icon) {
+        AttributeSet style = STYLES.addAttribute(STYLES.getEmptySet(), AbstractDocument.ElementNameAttribute, StyleConstants.IconElementName);
+        return STYLES.addAttribute(style, StyleConstants.IconAttribute, icon);
     }
 
     public void centerText(boolean state){
         SimpleAttributeSet center = new SimpleAttributeSet();
         if (state) StyleConstants.setAlignment(center, StyleConstants.ALIGN_CENTER);
         else StyleConstants.setAlignment(center, StyleConstants.ALIGN_LEFT);
-        outputDoc.setParagraphAttributes(0, outputDoc.getLength(), center, false);
+        synchronized (pendingOutput) {
+            pendingOutput.add(new Run(doc -> doc.setParagraphAttributes(0, doc.getLength(), center, false)));
+            scheduleOutput();
+        }
     }
 
     private JButton createZeroButton() {
@@ -515,32 +784,73 @@ public class GUI {
         gameObj = game;
 	}
    
-    public void scrollSmooth(int milisSteps) {    
-        int i = 0;
-        int end = scroll.getVerticalScrollBar().getMaximum();
-        if (end < 1500) end = 10000;
-        while(i < end - scroll.getVerticalScrollBar().getHeight()){
-            scroll.getVerticalScrollBar().setValue(i);
-            if (i > 10 && i < 15) end = scroll.getVerticalScrollBar().getMaximum();
-            try {
-                Thread.sleep(milisSteps);
-            } catch (InterruptedException e) {}
-            i++;
+    /**
+     * Slowly scrolls the output down to the bottom, once everything printed so far is shown.
+     * Returns straight away; the scrolling is animated on the EDT, and any key skips to the end.
+     * @param milisSteps - how long to take per pixel scrolled.
+     */
+    public void scrollSmooth(int milisSteps) {
+        synchronized (pendingOutput) {
+            pendingOutput.add(new Run(doc -> startScrollAnimation(milisSteps)));
+            scheduleOutput();
         }
-        flush();
+    }
+
+    /** Runs on the EDT. Starts animating the scroll bar from where it is to the bottom. */
+    private void startScrollAnimation(int milisSteps) {
+        stopScrollAnimation(false);
+        JScrollBar bar = scroll.getVerticalScrollBar();
+        int start = bar.getValue();
+        long startTime = System.nanoTime();
+        Timer timer = new Timer(FRAME_MS, null);
+        timer.addActionListener(e -> {
+            // The end is read every frame, since the text may still be being laid out
+            int end = bar.getMaximum() - bar.getVisibleAmount();
+            double duration = Math.max(1, end - start) * milisSteps * 1e6;
+            double t = Math.min(1, (System.nanoTime() - startTime) / duration);
+            double eased = t * t * (3 - 2 * t); // ease in and out
+            bar.setValue(start + (int) Math.round((end - start) * eased));
+            if (t >= 1) stopScrollAnimation(false);
+        });
+        scrollAnimation = timer;
+        timer.start();
+    }
+
+    /**
+     * Runs on the EDT. Stops the scroll animation, if one is running.
+     * @param skip - whether to jump to where the animation would have ended.
+     */
+    private void stopScrollAnimation(boolean skip) {
+        if (scrollAnimation == null) return;
+        scrollAnimation.stop();
+        scrollAnimation = null;
+        if (skip) {
+            JScrollBar bar = scroll.getVerticalScrollBar();
+            bar.setValue(bar.getMaximum() - bar.getVisibleAmount());
+        }
+    }
+
+    /**
+     * Sets what pressing a skip key does, or {@code null} when there is nothing to skip.
+     * @param action - the action, which is run on the EDT.
+     */
+    public void onSkip(Runnable action) {
+        skipAction = action;
     }
 
     /**
      * Enables or disables cutscene mode.
      * @param state
      */
-    public void cutsceneMode(Boolean state){
+    public void cutsceneMode(boolean state){
         commandsPrinted = !state;
-        scroll.getVerticalScrollBar().setEnabled(!state);
-        scroll.setWheelScrollingEnabled(!state);
-        scroll.setEnabled(!state);
-        input.setEnabled(!state);
-        if (!state) input.requestFocusInWindow();
+        SwingUtilities.invokeLater(() -> { // after the window is created, which is also queued on the EDT
+            scroll.getVerticalScrollBar().setEnabled(!state);
+            scroll.setWheelScrollingEnabled(!state);
+            scroll.setEnabled(!state);
+            input.setEnabled(!state);
+            if (!state) input.requestFocusInWindow();
+        });
     }
 
     /**
@@ -552,18 +862,87 @@ public class GUI {
     }
 
     /**
-     * Resets the command memory.
+     * Stops browsing or searching the command history. The history itself is kept, across runs too.
      */
     public void resetCommands(){
-        Button a = new Button("click");
-        KeyEvent e = new KeyEvent(a, 1, 20, 1, KeyEvent.VK_F23, 'a');
-        inputListener.keyPressed(e);
+        SwingUtilities.invokeLater(() -> {
+            if (searchQuery != null) endSearch();
+            browsing = -1;
+            inProgressCommand = "";
+        });
+    }
+
+    /** Runs on the EDT. Starts a reverse search of the history, or finds the next older match. */
+    private void startSearch() {
+        if (searchQuery != null) {
+            search(searchMatch);
+            return;
+        }
+        if (browsing < 0) inProgressCommand = input.getText();
+        searchQuery = "";
+        searchMatch = history.end();
+        showSearch(true);
+    }
+
+    /**
+     * Runs on the EDT. Shows the newest command before {@code before} that contains the query.
+     * @param before - the history entry to search back from, exclusive.
+     */
+    private void search(int before) {
+        int seq = history.search(searchQuery, before);
+        if (seq >= 0) {
+            searchMatch = seq;
+            input.setText(history.get(seq));
+        }
+        showSearch(seq >= 0 || searchQuery.isEmpty());
+    }
+
+    private void showSearch(boolean found) {
+        prompt.setText((found ? "(reverse-i-search)`" : "(failed reverse-i-search)`") + searchQuery + "': ");
+    }
+
+    /** Runs on the EDT. Ends the reverse search, leaving the match in the input box. */
+    private void endSearch() {
+        if (searchMatch < history.end()) browsing = searchMatch; // up and down carry on from the match
+        searchQuery = null;
+        prompt.setText(PROMPT);
+    }
+
+    /**
+     * Runs on the EDT. Handles a key pressed during a reverse search. Letters typed are added to
+     * the query in {@code keyTyped()}.
+     * @return True if the key should then be handled as usual.
+     */
+    private boolean searchKeyPressed(KeyEvent e) {
+        int key = e.getKeyCode();
+        if (key == KeyEvent.VK_R && e.isControlDown()) return true;
+        if (key == KeyEvent.VK_BACK_SPACE) {
+            e.consume();
+            if (!searchQuery.isEmpty()) {
+                searchQuery = searchQuery.substring(0, searchQuery.length() - 1);
+                search(history.end());
+            }
+            return false;
+        }
+        if (key == KeyEvent.VK_ESCAPE || (key == KeyEvent.VK_G && e.isControlDown())) {
+            e.consume();
+            searchQuery = null;
+            prompt.setText(PROMPT);
+            input.setText(inProgressCommand);
+            return false;
+        }
+        if (key == KeyEvent.VK_ENTER || key == KeyEvent.VK_UP || key == KeyEvent.VK_DOWN || key == KeyEvent.VK_LEFT || key == KeyEvent.VK_RIGHT || key == KeyEvent.VK_HOME || key == KeyEvent.VK_END) {
+            endSearch();
+            return true;
+        }
+        return false;
     }
 
     /**
      * Gets the number of available text lines.
      */
     public int textLines() {
+        awaitWindow();
         return frame.getHeight() / 18;
     }
 }
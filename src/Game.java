@@ -1,29 +1,47 @@
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InvalidClassException;
 import java.io.NotSerializableException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.awaitility.Awaitility;
 
 /**
  * Plays Zork.
  */
 public class Game implements java.io.Serializable { 
-  private static final String GAME_SAVE_LOCATION = "data/Game Save.ser";
-  private transient static GUI gui;
-  private static MusicPlayer music;
+  public static final String DEFAULT_STATE_DIRECTORY = "data"; // where saves and the journal are kept
+  private static final boolean SYNC_SAVES = true; // force saves to disk before replacing the old save
+  private static final String LEGACY_SAVE_NAME = "Game Save.ser"; // the only save, before there were slots
+  private transient Frontend gui;
+  private transient SaveSlots saveSlots;
+  private transient Journal journal;
+  private transient ArrayDeque<String> replay; // lines left to replay while recovering a crashed session
+  private int commandsSinceCheckpoint;
+  private transient UndoHistory history;
+  private transient Save pristine; // the freshly built world, which restarts copy instead of reloading it
+  private transient Save trialCheckpoint; // the state when the current trial started, for retrying it
+  private transient Save sharedState; // the undo snapshot being played on until something changes, see restoreState()
+  private GameRandom random; // saved with the game, so fights replay the same way
+  private boolean stateRestored; // set when the state was replaced in the middle of a command
+  private boolean quit; // set once the player has quit; unwinds like stateRestored
+  private transient MusicPlayer music;
+  private transient AudioMixer mixer; // plays all of this game's music through one line
   private boolean musicPlaying;
   private double musicVolumeOffset;
-  public static HashMap<String, Room> roomMap; // hashmaps storing rooms, items, and enemies
-  public static HashMap<String, Item> itemMap;
-  public static HashMap<String, Enemy> enemyMap;
+  private HashMap<String, Room> roomMap; // hashmaps storing rooms, items, and enemies
+  private HashMap<String, Item> itemMap;
+  private HashMap<String, Enemy> enemyMap;
+  private transient HashSet<String> validItems; // item names and aliases, in lower case
   private Inventory inventory;
   private Player player;
   private Parser parser;
@@ -34,27 +52,107 @@ public class Game implements java.io.Serializable {
   private boolean gameEnded; // if game ends
   private boolean supportCheck; // if player used Moral Support
   private boolean hasOpenedVault; // if player opens Alaskan Cheese vault 
-  private final double DEFAULT_BACKGROUND_MUSIC_VOL = -15;
+  private static final double DEFAULT_BACKGROUND_MUSIC_VOL = -15;
+  private static final String BACKGROUND_MUSIC = "data/audio/background.wav";
+  private static final String FIGHTING_MUSIC = "data/audio/fighting.wav";
+  private static final double FIGHTING_MUSIC_VOL = -25;
+  private static final String[] MUSIC_TRACKS = {BACKGROUND_MUSIC, FIGHTING_MUSIC, "data/audio/hell.wav", "data/audio/sky.wav", "data/audio/end.wav", "data/audio/credits.wav"};
+  private static final long MUSIC_CROSSFADE_MS = 1500; // between the music of different areas
+  private static final long FIGHT_CROSSFADE_MS = 800; // into and out of a fight
+  private static final long CREDITS_FADE_MS = 1500;
+  private static final int STARTUP_THREADS = 4; // one for each part read while starting
   private final int PLAYER_HEALTH = 100;
   private final int INVENTORY_WEIGHT = 50; // max weight you can carry
+  private final int JOURNAL_CHECKPOINT_INTERVAL = 50; // commands between journal checkpoints
   private String musicString;
+  private transient Inventory statusInventory; // what the status bar was last built from
+  private transient Player statusPlayer;
+  private transient Room statusRoom;
+  private transient int statusInventoryVersion;
+  private transient int statusPlayerVersion;
+  private transient int statusRoomVersion;
+  private transient boolean statusGameEnded;
   private int trial;
 
   /**
    * Create the game and initialize its internal map.
+   * @param frontend - where the game is shown and commands are read from.
    * @author Stefano - logic
    * @author adapted from Mr. DesLauriers's code
    */
-  public Game() {
-    gui = GUI.getGUI();
+  public Game(Frontend frontend) {
+    this(frontend, GameRandom.newSeed());
+  }
+
+  /**
+   * Create the game with a fixed random seed, so every fight plays out the same way each time.
+   * <p>
+   * The saves and journal are kept in the shared "data" directory, so only one game made this
+   * way should run at a time; give each concurrent game its own directory instead.
+   * @param frontend - where the game is shown and commands are read from.
+   * @param seed - the seed for the session's random number generator.
+   */
+  public Game(Frontend frontend, long seed) {
+    this(frontend, seed, DEFAULT_STATE_DIRECTORY);
+  }
+
+  /**
+   * Create the game, keeping its saves and journal in their own directory. Games that use
+   * different directories are fully independent, so any number can run in one process.
+   * @param frontend - where the game is shown and commands are read from.
+   * @param seed - the seed for the session's random number generator.
+   * @param stateDirectory - the directory for the journal, with the saves in its "saves" folder.
+   */
+  public Game(Frontend frontend, long seed, String stateDirectory) {
+    this(frontend, seed, stateDirectory, new StartupTimer(false));
+  }
+
+  /**
+   * Create the game, timing how long each part of starting it takes.
+   * <p>
+   * The content files and the save index are all read at the same time, each on its own thread,
+   * and the world is built from them as soon as they are in. The music is decoded by the mixer in
+   * the background, and the first prompt does not wait for it.
+   * @param frontend - where the game is shown and commands are read from.
+   * @param seed - the seed for the session's random number generator.
+   * @param stateDirectory - the directory for the journal, with the saves in its "saves" folder.
+   * @param startup - records the startup phases, and is told when the first prompt is shown.
+   */
+  public Game(Frontend frontend, long seed, String stateDirectory, StartupTimer startup) {
+    random = new GameRandom(seed);
+    gui = frontend;
     gui.sendGameObj(this);
+    saveSlots = new SaveSlots(stateDirectory + "/saves", SYNC_SAVES);
+    journal = new Journal(stateDirectory);
+    history = new UndoHistory();
+    mixer = new AudioMixer();
+    long decodeStarted = startup.startBackground();
+    CompletableFuture<?>[] decoded = new CompletableFuture<?>[MUSIC_TRACKS.length];
+    for (int i = 0; i < MUSIC_TRACKS.length; i++) {
+      decoded[i] = mixer.preload(MUSIC_TRACKS[i]); // decoded in the background, in this order, so changing tracks is instant
+    }
+    CompletableFuture.allOf(decoded).thenRun(() -> startup.endBackground("decode music", decodeStarted));
 
     //Check that all dependencies are present
     try {
       existJavaDependencies();
     } catch (Error e) {
-      GameError.javaDependenciesNotFound();
-    }
+      GameError.javaDependenciesNotFound(gui);
+    }
+
+    ExecutorService loader = Executors.newFixedThreadPool(STARTUP_THREADS, r -> {
+      Thread thread = new Thread(r, "Startup Loader");
+      thread.setDaemon(true);
+      return thread;
+    });
+    CompletableFuture<JSONArray> jsonItems = load(loader, startup, "read items.json", Item::getItems);
+    CompletableFuture<JSONArray> jsonRooms = load(loader, startup, "read rooms.json", Room::getRooms);
+    CompletableFuture<JSONArray> jsonEnemies = load(loader, startup, "read enemies.json", Enemy::getEnemies);
+    CompletableFuture<ArrayList<SaveInfo>> slots = load(loader, startup, "read save index", () -> {
+      saveSlots.importLegacy(stateDirectory + "/" + LEGACY_SAVE_NAME);
+      return saveSlots.list();
+    });
+    loader.shutdown(); // its threads exit once the work above is done
 
     // init player stuff
     inventory = new Inventory(INVENTORY_WEIGHT);
@@ -62,79 +160,253 @@ public class Game implements java.io.Serializable {
 
     //Init rooms and game state
     try {
-      initItems();
-      initRooms();
-      initEnemies();
+      long started = startup.start();
+      initRooms(jsonRooms.join(), initItems(jsonItems.join()));
+      initEnemies(jsonEnemies.join());
+      startup.end("build world", started);
       musicPlaying = true;
-      startMusic("data/audio/background.wav", DEFAULT_BACKGROUND_MUSIC_VOL);
+      startMusic(BACKGROUND_MUSIC, DEFAULT_BACKGROUND_MUSIC_VOL);
       currentRoom = roomMap.get("South of the Cyan House");
       hasAnsweredNewsQuestions = false;
       supportCheck = false;
       hasOpenedVault = false;
-      
-      
-      //Initialize the game if a previous state was recorded
-      Save save = null;
-      try {
-        FileInputStream fileIn = new FileInputStream(GAME_SAVE_LOCATION);
-        ObjectInputStream in = new ObjectInputStream(fileIn);
-        save = (Save) in.readObject();
-        in.close();
-        fileIn.close();
-      } catch (InvalidClassException | ClassNotFoundException e) {
-        gui.printerr("A local class has been altered without resetting the game save! Resetting.");
-        gui.println();
-        resetSaveState();
-      } catch (FileNotFoundException e){
-        gui.printInfo("No game save file was found! Creating file.");
-        gui.println();
-        resetSaveState();
-      } catch (IOException e){
-        gui.printerr("Error while loading saved game. Resetting.");
-        gui.println();
-        resetSaveState();
-      } 
-
-      if (save != null){
-        gui.println("A previously saved game state was recorded.");
-        gui.println("Would you like to restore from that save?");
-        gui.println();
-        gui.println("Type \"y\" to restore or \"n\" to ignore.");
-
-        boolean validInput = false;
-        while(!validInput){
-          String in = gui.readCommand();
-          if (in.equalsIgnoreCase("y") || in.equalsIgnoreCase("yes")){
-            roomMap = save.getRoomMap();
-            inventory = save.getInventory();
-            pastRoom = save.getPastRoom();
-            currentRoom = save.getCurrentRoom();
-            player = save.getPlayer();
-            enemyMap = save.getEnemyMap();
-            isInTrial = save.getIsInTrial();
-            trial = save.getTrial();
-            hasAnsweredNewsQuestions = save.getHasAnsweredNewsQuestions();
-            hasOpenedVault = save.getHasOpenedVault();
-            supportCheck = save.getSupportCheck();
-
-            gui.printInfo("Restored from saved game.\n");
-            validInput = true;
-          } else if (in.equalsIgnoreCase("n") || in.equalsIgnoreCase("no") || in.equalsIgnoreCase("cancel")){
-            gui.reset();
-            gui.printInfo("Ignoring old game state.\n");
-            resetSaveState();
-            validInput = true;
-          } else {
-            gui.println("\"" + in + "\" is not a valid choice!");
-          }
-        } 
+      started = startup.start();
+      pristine = snapshot();
+      startup.end("snapshot world", started);
+      startup.ready();
+
+      //Recover a crashed session, or initialize the game if a previous state was recorded
+      if (!recoverSession()){
+        restoreSavePrompt(slots.join());
+        resetHistory();
+        journal.start(snapshot(), history);
       }
     } catch (Exception e) {
       e.printStackTrace();
       gui.printerr("ERROR! Could not initialize the game!");
     }
 
-    parser = new Parser();
+    parser = new Parser(gui);
+  }
+
+  /**
+   * Runs part of starting the game on the startup threads, timing it.
+   * @param loader - the startup threads.
+   * @param startup - records how long the part took.
+   * @param phase - what the part does, for the startup report.
+   * @param task - the part to run.
+   * @return A future for its result.
+   */
+  private static <T> CompletableFuture<T> load(ExecutorService loader, StartupTimer startup, String phase, Supplier<T> task) {
+    long queued = startup.start();
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return task.get();
+      } finally {
+        startup.end(phase, queued);
+      }
+    }, loader);
+  }
+
+  /**
+   * Lists the saved games, if there are any, and asks the player whether to restore one.
+   * Only the save index is read here; the chosen save is loaded afterwards.
+   * @param slots - the saved games, from {@code saveSlots.list()}.
+   * @author Stefano - everything
+   */
+  private void restoreSavePrompt(ArrayList<SaveInfo> slots) {
+    if (slots.isEmpty()) return;
+
+    gui.println(slots.size() == 1 ? "A previously saved game state was recorded:" : "Previously saved game states were recorded:");
+    printSaveSlots(slots);
+    gui.println();
+    gui.println("Would you like to restore from a save?");
+    if (slots.size() == 1) gui.println("Type \"y\" to restore or \"n\" to ignore.");
+    else gui.println("Type the name of a save to restore it, or \"n\" to ignore.");
+
+    while(true){
+      String in = gui.readCommand().trim().toLowerCase();
+      String slot = null;
+      if (slots.size() == 1 && (in.equals("y") || in.equals("yes"))) slot = slots.get(0).getSlot();
+      for (SaveInfo info : slots) {
+        if (info.getSlot().equals(in)) slot = in;
+      }
+      if (slot != null){
+        Save save = readSlot(slot);
+        if (save != null){
+          applySave(save);
+          gui.printInfo("Restored from saved game.\n");
+          return;
+        }
+        gui.println("Type the name of another save, or \"n\" to ignore.");
+      } else if (in.equals("n") || in.equals("no") || in.equals("cancel")){
+        gui.reset();
+        gui.printInfo("Ignoring old game state.\n");
+        return;
+      } else {
+        gui.println("\"" + in + "\" is not a valid choice!");
+      }
+    }
+  }
+
+  /**
+   * Prints one line for each save slot.
+   * @param slots - the slots to print.
+   */
+  private void printSaveSlots(ArrayList<SaveInfo> slots) {
+    for (SaveInfo info : slots) {
+      gui.println("  " + info.describe());
+    }
+  }
+
+  /**
+   * Reads the full game state from a save slot, printing an error if it cannot be read.
+   * @param slot - the slot name.
+   * @return The saved state, or null.
+   */
+  private Save readSlot(String slot) {
+    try {
+      Save save = saveSlots.load(slot);
+      if (save == null) gui.println("There is no valid state to load!");
+      return save;
+    } catch (FileNotFoundException e){
+      gui.println("There is no save called \"" + slot + "\".");
+    } catch (InvalidClassException | ClassNotFoundException e) {
+      gui.printerr("A local class has been altered since this game was saved! Could not load.");
+    } catch (CorruptSaveException e){
+      gui.printerr("This save is damaged and cannot be loaded. " + e.getMessage());
+    } catch (IOException | ClassCastException e){
+      gui.printerr("Error while loading! Could not load.");
+    }
+    return null;
+  }
+
+  /**
+   * Offers to recover the session left behind by a crash, using the command journal.
+   * The journal's checkpoint is restored and the commands typed after it are replayed.
+   * @return True if the session is being recovered.
+   */
+  private boolean recoverSession() {
+    if (!journal.hasUncleanSession()) return false;
+    gui.println("The game did not shut down properly last time.");
+    gui.println("Would you like to recover where you left off?");
+    gui.println();
+    gui.println("Type \"y\" to recover or \"n\" to ignore.");
+    while(true){
+      String in = gui.readCommand();
+      if (in.equalsIgnoreCase("y") || in.equalsIgnoreCase("yes")){
+        ArrayDeque<String> lines = new ArrayDeque<String>();
+        Journal.Checkpoint checkpoint = journal.recover(lines);
+        if (checkpoint == null){
+          gui.printerr("The recovery data is damaged and cannot be used.");
+          gui.println();
+          return false;
+        }
+        Save save = checkpoint.getSave();
+        applySave(save);
+        if (checkpoint.getHistory() != null) history = checkpoint.getHistory(); // so undo reaches back past the checkpoint
+        else resetHistory();
+        if (!isInTrial && save.getMusic() != null){
+          music.stop();
+          startMusic(save.getMusic(), DEFAULT_BACKGROUND_MUSIC_VOL);
+        }
+        replay = lines;
+        gui.reset();
+        gui.printInfo("Recovering the previous session...\n");
+        return true;
+      } else if (in.equalsIgnoreCase("n") || in.equalsIgnoreCase("no") || in.equalsIgnoreCase("cancel")){
+        gui.reset();
+        return false;
+      } else {
+        gui.println("\"" + in + "\" is not a valid choice!");
+      }
+    }
+  }
+
+  /**
+   * Replaces the current game state with a saved one.
+   * @param save - the state to restore.
+   */
+  private void applySave(Save save) {
+    roomMap = save.getRoomMap();
+    inventory = save.getInventory();
+    pastRoom = save.getPastRoom();
+    currentRoom = save.getCurrentRoom();
+    player = save.getPlayer();
+    enemyMap = save.getEnemyMap();
+    if (save.getItemMap() != null) itemMap = save.getItemMap(); // saves from older versions have none
+    if (save.getRandom() != null) random = save.getRandom();
+    isInTrial = save.getIsInTrial();
+    trial = save.getTrial();
+    hasAnsweredNewsQuestions = save.getHasAnsweredNewsQuestions();
+    hasOpenedVault = save.getHasOpenedVault();
+    supportCheck = save.getSupportCheck();
+    sharedState = null;
+  }
+
+  /**
+   * Takes a snapshot of the current game state.
+   * @return The snapshot.
+   */
+  private Save snapshot() {
+    return snapshot(null);
+  }
+
+  /**
+   * Takes a snapshot of the current game state, sharing the copies of anything unchanged
+   * since an earlier snapshot taken with the same cache.
+   * @param cache - the cache to share copies through, or null.
+   * @return The snapshot.
+   */
+  private Save snapshot(SnapshotCache cache) {
+    return Save.snapshot(roomMap, itemMap, inventory, currentRoom, pastRoom, player, enemyMap, musicString, isInTrial, hasAnsweredNewsQuestions, hasOpenedVault, supportCheck, trial, random, cache);
+  }
+
+  /**
+   * Forgets the undo history, starting it again from the current state.
+   */
+  private void resetHistory() {
+    history.clear();
+    history.record(snapshot(history.getCache()));
+  }
+
+  /**
+   * Replaces the current game state with one from the undo history.
+   * The command being run is abandoned, and a fight in the restored state is started again
+   * by the main loop.
+   * The random number generator carries on from where it is, so an undone fight does not
+   * repeat the same rolls.
+   * <p>
+   * The snapshot's own objects become the game's, so undoing copies nothing. They are still part
+   * of the history, though, so they are copied by {@code unshareState()} before anything is
+   * changed.
+   * @param state - the state to restore.
+   */
+  private void restoreState(Save state) {
+    String playing = musicString;
+    GameRandom current = random;
+    applySave(state);
+    random = current;
+    sharedState = state;
+    history.getCache().clear(); // the cached copies belong to the objects that were just replaced
+    if (!isInTrial && state.getMusic() != null && !state.getMusic().equals(playing)){
+      music.stop();
+      startMusic(state.getMusic(), DEFAULT_BACKGROUND_MUSIC_VOL);
+    }
+    stateRestored = true;
+  }
+
+  /**
+   * Gives the game its own copy of the state it was restored to, if it is still playing on the
+   * undo snapshot's objects. Must be called before the state is changed. The copy shares the
+   * snapshot's objects with the next one again for everything left unchanged.
+   */
+  private void unshareState() {
+    if (sharedState == null) return;
+    Save state = sharedState;
+    GameRandom current = random;
+    applySave(state.copy(history.getCache()));
+    random = current;
   }
 
   /**Checks if the required Java dependencies are accessible. 
@@ -143,17 +415,17 @@ public class Game implements java.io.Serializable {
   */
   private void existJavaDependencies() {
     new JSONArray();
-    new Awaitility();
   }
 
   /**Initializes Enemies json 
    * @author Stefano - everything else
    * @author Michael - catchphrases, messages, damageMin/Max
+   * @param jsonEnemies - the enemies from enemies.json, or null if it could not be read.
   */
-  private void initEnemies() {
-    if (Enemy.getEnemies() == null) GameError.fileNotFound("data/enemies.json");
+  private void initEnemies(JSONArray jsonEnemies) {
+    if (jsonEnemies == null) GameError.fileNotFound(gui, "data/enemies.json");
     enemyMap = new HashMap<String, Enemy>();
-    for (Object enemyObj : Enemy.getEnemies()){
+    for (Object enemyObj : jsonEnemies){
       String id = (String) ((JSONObject) enemyObj).get("id");
       String name = (String) ((JSONObject) enemyObj).get("name");
       String catchphrase = (String) ((JSONObject) enemyObj).get("catchphrase");
@@ -182,11 +454,15 @@ public class Game implements java.io.Serializable {
    * @author Stefano - logic, everything else
    * @author Michael - quantity, isWeapon, isDroppable, damage
    * @author adapted from Mr. DesLauriers' code
+   * @param jsonItems - the items from items.json, or null if it could not be read.
+   * @return The items grouped by the name of the room they start in.
   */
-  private void initItems() {
-    if (Item.getItems() == null) GameError.fileNotFound("data/items.json");
+  private HashMap<String, ArrayList<Item>> initItems(JSONArray jsonItems) {
+    if (jsonItems == null) GameError.fileNotFound(gui, "data/items.json");
     itemMap = new HashMap<String, Item>();
-    for (Object itemObj : Item.getItems()){
+    validItems = new HashSet<String>();
+    HashMap<String, ArrayList<Item>> itemsByRoom = new HashMap<String, ArrayList<Item>>();
+    for (Object itemObj : jsonItems){
       String itemId = (String) ((JSONObject) itemObj).get("id");
       String name = (String) ((JSONObject) itemObj).get("name");
 
@@ -212,21 +488,28 @@ public class Game implements java.io.Serializable {
         item = new Item(Integer.parseInt(weight + ""), name, startingRoom, isTakeable, description, aliases, isDroppable, quantity.intValue());
       }
       itemMap.put(itemId, item);
+      itemsByRoom.computeIfAbsent(startingRoom, room -> new ArrayList<Item>()).add(item);
+      validItems.add(name.toLowerCase());
 
       for (String alias : aliases) {
         itemMap.put(alias, item);
+        validItems.add(alias);
       }
     }
+    return itemsByRoom;
   }
 
   /**Initializes rooms json 
    * @author Stefano - logic
    * @author adapted from Mr. DesLauriers' code
+   * @param jsonRooms - the rooms from rooms.json, or null if it could not be read.
+   * @param itemsByRoom - the items grouped by starting room, from {@code initItems()}.
   */
-  private void initRooms() {
-    if (Room.getRooms() == null) GameError.fileNotFound("data/rooms.json");
+  private void initRooms(JSONArray jsonRooms, HashMap<String, ArrayList<Item>> itemsByRoom) {
+    if (jsonRooms == null) GameError.fileNotFound(gui, "data/rooms.json");
     roomMap = new HashMap<String, Room>();
-    for (Object roomObj : Room.getRooms()) {
+    HashSet<String> roomNames = new HashSet<String>();
+    for (Object roomObj : jsonRooms) {
       Room room = new Room();
       String roomName = (String) ((JSONObject) roomObj).get("name");
       String roomId = (String) ((JSONObject) roomObj).get("id");
@@ -246,56 +529,174 @@ public class Game implements java.io.Serializable {
         exits.add(exit);
       }
       room.setExits(exits);
-      room.initItems();
+      // Several rooms can share a name, like the rooms of the Gloomy Forest, and each gets the items
+      ArrayList<Item> items = itemsByRoom.get(roomName);
+      room.setItems(items != null ? new ArrayList<Item>(items) : new ArrayList<Item>());
       roomMap.put(roomId, room);
+      roomNames.add(roomName);
+    }
+
+    // Items whose starting room does not exist could never be found
+    ArrayList<String> lost = new ArrayList<String>();
+    for (Map.Entry<String, ArrayList<Item>> entry : itemsByRoom.entrySet()) {
+      if (roomNames.contains(entry.getKey())) continue;
+      for (Item item : entry.getValue()) {
+        lost.add(item.getName() + " (in \"" + item.getStartingRoom() + "\")");
+      }
     }
+    if (!lost.isEmpty()) GameError.unknownStartingRooms(gui, lost);
   }
 
-  /** Main play routine. Loops until end of play.
+  /** Main play routine. Loops until the player quits.
    * @author Stefano - logic
    * @author adapted from Mr. DesLauriers' code
   */
   public void play() {
     printWelcome();
-    if (isInTrial){
-      if (trial == 1) sasquatch();
-      if (trial == 2) vaccuum();
-      if (trial == 3) robot();
-      if (trial == 4) deslauriers();
-      if (trial == 5) balloony();
-    }
+    stateRestored = isInTrial; // picks the fight back up below
     
     // Enter the main command loop. Here we repeatedly read commands and
     // execute them until the game is over.
-    boolean finished = false;
-    while (!finished) {
+    while (!quit) {
+      // An undo, load or restart unwinds whatever was running; a fight in the new state starts again here
+      if (stateRestored){
+        stateRestored = false;
+        if (isInTrial){
+          unshareState();
+          resumeTrial();
+          if (!stateRestored) recordHistory();
+        }
+        continue;
+      }
+      if (++commandsSinceCheckpoint > JOURNAL_CHECKPOINT_INTERVAL) checkpointJournal();
       Command command;
-      command = parser.getCommand();
+      command = parser.getCommand(readCommand());
       processCommand(command);
+      if (!stateRestored) recordHistory();
     }
   }
 
+  /**
+   * Starts the fight for the trial the player is in again, after the state was restored
+   * into the middle of it.
+   */
+  private void resumeTrial() {
+    if (trial == 1) sasquatch();
+    if (trial == 2) vaccuum();
+    if (trial == 3) robot();
+    if (trial == 4) deslauriers();
+    if (trial == 5) balloony();
+  }
+
+  /**
+   * Marks the player as being in a trial, and checkpoints the state in memory so the trial can
+   * be retried if the player dies.
+   * @param number - the trial being started.
+   */
+  private void startTrial(int number) {
+    isInTrial = true;
+    trial = number;
+    trialCheckpoint = snapshot(history.getCache());
+  }
+
+  /**
+   * Records the current state in the undo history.
+   */
+  private void recordHistory() {
+    history.record(snapshot(history.getCache()));
+  }
+
+  /**
+   * Reads the next line of player input and records it in the journal.
+   * While a crashed session is being recovered, lines come from the journal instead.
+   * @return The line typed.
+   */
+  private String readCommand() {
+    if (replay != null){
+      String line = replay.poll();
+      if (line != null) return line;
+      replay = null;
+      gui.printInfo("Recovered the previous session.\n");
+    }
+    String line = gui.readCommand();
+    journal.append(line);
+    return line;
+  }
+
+  /**
+   * Records a journal checkpoint of the current state, so a crash only needs to replay the
+   * commands typed after it. Must be called between commands.
+   */
+  private void checkpointJournal() {
+    if (replay != null) return; // the lines still to replay only exist in the old journal
+    journal.checkpoint(snapshot(), history);
+    commandsSinceCheckpoint = 0;
+  }
+
   /**Starts the background music. 
    * @author Stefano - everything
   */
   private void startMusic(String musicSrc, double volume) {
+    MusicPlayer next = openMusic(musicSrc, volume);
+    if (music != null) music.close(); // the track being replaced
+    music = next;
+    musicString = musicSrc;
+  }
+
+  /**
+   * Crossfades from the background music to another track. Returns straight away; the old track
+   * fades out while the new one fades in, both played by the mixer.
+   * @param musicSrc - path of the music file.
+   * @param volume - the volume to fade in to, before the player's own adjustment.
+   * @param millis - how long the crossfade takes.
+   */
+  private void crossfadeMusic(String musicSrc, double volume, long millis) {
+    if (!musicPlaying) millis = 0; // nobody is listening
+    MusicPlayer next = openMusic(musicSrc, volume);
+    MusicPlayer previous = music;
+    if (previous != null) fadeMusic(previous, millis, previous::close);
+    fadeInMusic(next, millis, -80, next.getVolume(), null);
+    music = next;
+    musicString = musicSrc;
+  }
+
+  /**
+   * Opens a music file, which starts it looping unless the player has stopped the music.
+   * @param musicSrc - path of the music file.
+   * @param volume - the volume, before the player's own adjustment.
+   * @return The music.
+   */
+  private MusicPlayer openMusic(String musicSrc, double volume) {
+    MusicPlayer player = null;
     try {
-      music = new MusicPlayer(musicSrc, true);
+      player = new MusicPlayer(mixer, musicSrc, true);
     } catch (FileNotFoundException e) {
-      GameError.fileNotFound(musicSrc);
+      GameError.fileNotFound(gui, musicSrc);
     }
-    double vol = volume + musicVolumeOffset;
+    player.setVolume(clampVolume(volume + musicVolumeOffset));
+    if (!musicPlaying) player.stop();
+    return player;
+  }
+
+  private static double clampVolume(double vol) {
     if (vol < -79.9) vol = -80;
     if (vol > 0) vol = 0;
-    music.setVolume(vol);
-    if (!musicPlaying) music.stop();
-    musicString = musicSrc;
+    return vol;
   }
 
-  public static MusicPlayer getMusicPlayer() {
+  public MusicPlayer getMusicPlayer() {
     return music;
   }
 
+  /**
+   * Checks whether a name is the name or an alias of any item in the game.
+   * @param item - the name, in any case.
+   * @return True if it names an item.
+   */
+  private boolean isValidItem(String item) {
+    return validItems.contains(item.toLowerCase());
+  }
+
   /** Print out the opening message for the player.
    * @author Stefano - logic
    * @author Michael - dialogue
@@ -319,6 +720,8 @@ public class Game implements java.io.Serializable {
    * @author Everyone added commands to this
    */
   private boolean processCommand(Command command) {
+    String word = command.isUnknown() ? null : command.getCommandWord();
+    if (!"undo".equals(word) && !"rewind".equals(word)) unshareState(); // those only move through the history
     if (command.isUnknown()) {
       gui.println("I don't know what you mean...");
       return false;
@@ -328,7 +731,7 @@ public class Game implements java.io.Serializable {
     else if (!command.isUnknown() && command.getFirstArg().equals("/?")){
       ArrayList<String> args = new ArrayList<String>();
       args.add(commandWord);
-      Parser.printCommandHelp(new Command("help", args));
+      parser.printCommandHelp(new Command("help", args));
     } else if (commandWord.equals("help")){
       printHelp(command);
     }
@@ -377,6 +780,10 @@ public class Game implements java.io.Serializable {
       gui.println();
     } else if (commandWord.equals("cls")){
       gui.reset();
+    } else if (commandWord.equals("undo")){
+      undo(command);
+    } else if (commandWord.equals("rewind")){
+      rewind();
     } else {
       gui.println("That command has no logic...");
     }
@@ -388,43 +795,85 @@ public class Game implements java.io.Serializable {
    * @author Stefano - everything
    */
   private void restartGame() {
-    resetSaveState();
     gui.reset();
     gui.resetCommands();
     gui.centerText(false);
     gui.printInfo("Game restarted.\n");
     try {
       music.stop();
-      initItems();
-      initRooms();
-      initEnemies();
-      isInTrial = false;
-      hasAnsweredNewsQuestions = false;
-      hasOpenedVault = false;
-      supportCheck = false;
+      // Copy the world built at startup rather than reading the JSON files again
+      GameRandom current = random;
+      applySave(pristine.copy());
+      random = current;
       gameEnded = false;
-      currentRoom = roomMap.get("South of the Cyan House");
-      inventory = new Inventory(INVENTORY_WEIGHT);
-      player = new Player(PLAYER_HEALTH);
+      trialCheckpoint = null;
       startMusic("data/audio/background.wav", DEFAULT_BACKGROUND_MUSIC_VOL);
     } catch (Exception e) {
       e.printStackTrace();
     }
+    resetHistory();
+    checkpointJournal();
+    stateRestored = true;
     printWelcome();
   }
 
+  /**
+   * Takes back the last commands, restoring the game state from before them.
+   * @param command - may give the number of commands to take back.
+   */
+  private void undo(Command command) {
+    int steps = 1;
+    if (command.hasArgs()){
+      try {
+        steps = Integer.parseInt(command.getFirstArg());
+      } catch (NumberFormatException e){
+        steps = 0;
+      }
+    }
+    if (steps < 1 || (command.hasArgs() && command.getArgs().size() > 1)){
+      gui.println("undo " + command.getStringifiedArgs() + " is not a valid undo command!");
+      return;
+    }
+    Save state = history.undo(steps);
+    if (state == null){
+      if (history.available() == 0) gui.println("There is nothing to undo.");
+      else gui.println("You can only undo " + history.available() + (history.available() == 1 ? " command." : " commands."));
+      return;
+    }
+    restoreState(state);
+    gui.printInfo(steps == 1 ? "Undid the last command.\n" : "Undid the last " + steps + " commands.\n");
+    if (!isInTrial) gui.println(currentRoom.longDescription());
+  }
+
+  /**
+   * Takes back every command since the game was started, restarted or loaded.
+   */
+  private void rewind() {
+    if (history.current() == history.origin()){ // older states may have left the history, but the origin never does
+      gui.println("There is nothing to rewind.");
+      return;
+    }
+    restoreState(history.rewind());
+    gui.printInfo("Rewound to where you started.\n");
+    if (!isInTrial) gui.println(currentRoom.longDescription());
+  }
+
   /**
    * Restarts the game
    * @author Stefano - everything
    * @author adapted from Mr. DesLauriers' code
    */
   private void endGame() {
+    saveSlots.close();
+    journal.close();
     music.stop();
+    mixer.close();
     gui.println("Thank you for playing. Goodbye!");
 
     // Nice transition to exit the game
     sleep(1000);
-    System.exit(0);
+    quit = true;
+    stateRestored = true; // unwinds any fight or cutscene back to play(), which then returns
   }
 
   /**
@@ -640,12 +1089,15 @@ public class Game implements java.io.Serializable {
           enemyMap.get("friends robot").setIsDead(true);
           enemyMap.get("friends robot").setHealth(0);
           gui.cutsceneMode(true);
-          sleep(1000);
-          gui.println();
-          gui.println("The Friends Robot cowers in fear from your dominance. It seems to be perturbed from the water bottle in your hand.");
-          gui.println("\"P1eA5e d0N't hUrt m3! 1 hav3 frI3nDs!\" it says, with a robotic quaver in its voice.");
-          gui.println("Trembling quietly, it moves out of your path, revealing a carefully chiseled inscription in the wall.");
-          sleep(3000);
+          playCutscene(new Cutscene()
+            .pause(1000)
+            .then(() -> {
+              gui.println();
+              gui.println("The Friends Robot cowers in fear from your dominance. It seems to be perturbed from the water bottle in your hand.");
+              gui.println("\"P1eA5e d0N't hUrt m3! 1 hav3 frI3nDs!\" it says, with a robotic quaver in its voice.");
+              gui.println("Trembling quietly, it moves out of your path, revealing a carefully chiseled inscription in the wall.");
+            })
+            .pause(3000));
           gui.cutsceneMode(false);
         } else {
           gui.println("That doesn't seem to do anything.");
@@ -666,7 +1118,7 @@ public class Game implements java.io.Serializable {
       return;
     }
     String itemName = command.getStringifiedArgs();
-    if (!Item.isValidItem(itemName)){
+    if (!isValidItem(itemName)){
       gui.println("I don't know what you mean.");
     } else if (!currentRoom.containsItem(itemName)){
       gui.println("You can't seem to find that item here.");
@@ -698,7 +1150,7 @@ public class Game implements java.io.Serializable {
       return;
     }
     String itemName = command.getStringifiedArgs().toLowerCase();
-    if (!Item.isValidItem(itemName)){
+    if (!isValidItem(itemName)){
       gui.println("Not a valid item!");
     } else if (!inventory.hasItem(itemMap.get(itemName))){
       gui.println("You don't seem to have that item.");
@@ -713,86 +1165,99 @@ public class Game implements java.io.Serializable {
   }
 
   /**
-   * Saves the game and optionally quits.
+   * Saves the game and optionally quits. Saves can be given a name to keep several of them.
    * @param command
    * @author Stefano - everything
    */
   private boolean save(Command command) {
+    String action = command.hasArgs() ? command.getFirstArg().toLowerCase() : "game";
+    String slot = SaveSlots.DEFAULT_SLOT;
+    if (command.hasArgs() && command.getArgs().size() > 1){
+      slot = String.join(" ", command.getArgs().subList(1, command.getArgs().size())).toLowerCase();
+    }
+    if (!SaveSlots.isValidName(slot)){
+      gui.println("\"" + slot + "\" is not a valid save name! Use up to 32 letters, numbers, - or _.");
+      return false;
+    }
+
     boolean quit = false;
-    if (command.getLastArg().equalsIgnoreCase("quit")){
+    if (action.equals("quit")){
       quit = true;
-    } else if (command.getLastArg().equalsIgnoreCase("game") || !command.hasArgs()){ 
-    } else if (command.getLastArg().equalsIgnoreCase("load")){
-      loadSave();
+    } else if (action.equals("game")){ 
+    } else if (action.equals("load")){
+      loadSave(slot);
+      return false;
+    } else if (action.equals("list")){
+      ArrayList<SaveInfo> slots = saveSlots.list();
+      if (slots.isEmpty()) gui.println("There are no saved games.");
+      else printSaveSlots(slots);
       return false;
-    } else if (command.getLastArg().equalsIgnoreCase("clear") || command.getLastArg().equalsIgnoreCase("reset")){
-      resetSaveState();
-      gui.println("Cleared game save.");
+    } else if (action.equals("clear") || action.equals("reset")){
+      try {
+        if (saveSlots.clear(slot)) gui.println("Cleared game save \"" + slot + "\".");
+        else gui.println("There is no save called \"" + slot + "\".");
+      } catch (IOException e){
+        gui.printerr("Error while clearing game save! Could not clear.");
+      }
       return false;
     } else {
       gui.println("save " + command.getStringifiedArgs() + " is not a valid save command!");
       return false;
     }
-    Save game = new Save(roomMap, inventory, currentRoom, pastRoom, player, enemyMap, musicString, isInTrial, hasAnsweredNewsQuestions, hasOpenedVault, supportCheck, trial);
-    try {
-      FileOutputStream fileOut = new FileOutputStream(GAME_SAVE_LOCATION);
-      ObjectOutputStream out = new ObjectOutputStream(fileOut);
-      out.writeObject(game);
-      out.close();
-      fileOut.close();
-      gui.println(quit ? "Game saved! Quitting." : "Game saved!");
-    } catch (NotSerializableException e){
+    Save game = snapshot();
+    SaveInfo info = new SaveInfo(slot, currentRoom.getRoomName(), player.getHealth(), player.getTrialsCompleted(), System.currentTimeMillis());
+    if (quit){
+      // Quitting has to wait for the write, otherwise the game would exit before it lands.
+      try {
+        saveSlots.save(slot, game, info).join();
+        gui.println("Game saved! Quitting.");
+      } catch (CompletionException e){
+        printSaveError(e.getCause());
+        return false;
+      }
+    } else {
+      saveSlots.save(slot, game, info).whenComplete((result, e) -> {
+        if (e == null) gui.println("Game saved!");
+        else printSaveError(e);
+      });
+    }
+    return quit;
+  }
+
+  /**
+   * Prints the reason a save could not be written.
+   * @param e - the error thrown by the save writer.
+   */
+  private void printSaveError(Throwable e) {
+    if (e instanceof CompletionException) e = e.getCause();
+    if (e instanceof NotSerializableException){
       gui.printerr("NotSerializableException - A class that needs to be saved does not implement Serializable!");
-    } catch (IOException e){
+    } else {
       gui.printerr("Error while saving! Could not save.");
     }
-    return quit;
   }
 
   /**
    * Allows the game to load a previously saved state of the game.
+   * @param slot - the name of the save to load.
    * @author Stefano - everything
    */
-  private void loadSave() {
-    Save save = null;
-    try {
-      FileInputStream fileIn = new FileInputStream(GAME_SAVE_LOCATION);
-      ObjectInputStream in = new ObjectInputStream(fileIn);
-      save = (Save) in.readObject();
-      in.close();
-      fileIn.close();
-      if (save != null){
-        music.stop();
-        roomMap = save.getRoomMap();
-        inventory = save.getInventory();
-        pastRoom = save.getPastRoom();
-        currentRoom = save.getCurrentRoom();
-        player = save.getPlayer();
-        enemyMap = save.getEnemyMap();
-        isInTrial = save.getIsInTrial();
-        trial = save.getTrial();
-        hasAnsweredNewsQuestions = save.getHasAnsweredNewsQuestions();
-        hasOpenedVault = save.getHasOpenedVault();
-        supportCheck = save.getSupportCheck();
-        gui.reset();
-        gui.centerText(false);
-        gui.printInfo("Game reloaded from saved data.\n");
-        printWelcome();
-        if (!isInTrial){
-          startMusic(save.getMusic(), DEFAULT_BACKGROUND_MUSIC_VOL);          
-        } else {
-          if (trial == 1) sasquatch();
-          if (trial == 2) vaccuum();
-          if (trial == 3) robot();
-          if (trial == 4) deslauriers();
-          if (trial == 5) balloony();
-        }
-      } else {
-        gui.println("There is no valid state to load!");
+  private void loadSave(String slot) {
+    Save save = readSlot(slot);
+    if (save != null){
+      music.stop();
+      applySave(save);
+      gui.reset();
+      gui.centerText(false);
+      gui.printInfo("Game reloaded from saved data.\n");
+      printWelcome();
+      if (!isInTrial){
+        startMusic(save.getMusic(), DEFAULT_BACKGROUND_MUSIC_VOL);          
       }
-    } catch (ClassNotFoundException | IOException e) {
-      gui.printerr("Error while loading! Could not load.");
-    }   
+      resetHistory();
+      checkpointJournal();
+      stateRestored = true; // the main loop starts the fight again if the save was in one
+    }
   }
 
   /**
@@ -812,7 +1277,7 @@ public class Game implements java.io.Serializable {
     gui.println("Type \"y\" to confirm or \"n\" to cancel.");
     boolean validInput = false;
     while(!validInput){
-      String in = gui.readCommand();
+      String in = readCommand();
       if (in.equalsIgnoreCase("y") || in.equalsIgnoreCase("yes")) return true;
       else if (in.equalsIgnoreCase("n") || in.equalsIgnoreCase("no") || in.equalsIgnoreCase("cancel")){
         gui.println("Not " + (string.equals("quit") ? "quitting." : "restarting."));
@@ -839,11 +1304,11 @@ public class Game implements java.io.Serializable {
     
     // Try to leave current room.
     Room pastRoom = currentRoom;
-    Room nextRoom = currentRoom.nextRoom(direction);
+    Room nextRoom = currentRoom.nextRoom(direction, roomMap);
     
     if (nextRoom == null)
       gui.println(direction + " is not a valid direction.");
-    else if (!currentRoom.canGoDirection(direction, inventory, player)){
+    else if (!canGoDirection(direction)){
       if (nextRoom.getRoomName().equals("Tableland Plains") || nextRoom.getRoomName().equals("Town Plaza") || nextRoom.getRoomName().equals("Shadowed Plains")){
         printTomeHelp();
       }
@@ -882,6 +1347,7 @@ public class Game implements java.io.Serializable {
       } else {
         gui.println("You cannot leave while the enemy is still at large!");
       }
+      if (stateRestored) return; // the fight was undone, restarted or replaced by a load
       if (currentRoom.getRoomName().equals("Fur Store")){
         gui.println(currentRoom.shortDescription());
         salesman();
@@ -930,15 +1396,11 @@ public class Game implements java.io.Serializable {
 
     // change music
     if (roomMap.get("Gloomy Forest 1") == nextRoom && pastRoom.getRoomName().equals("Gates of Hell")){
-      fadeMusic(music, 30);
-      music.stop();
-      startMusic("data/audio/hell.wav", DEFAULT_BACKGROUND_MUSIC_VOL - 5);
+      crossfadeMusic("data/audio/hell.wav", DEFAULT_BACKGROUND_MUSIC_VOL - 5, MUSIC_CROSSFADE_MS);
     }
 
     if (pastRoom.getRoomName().equals("Sky Temple Pavillion") && nextRoom.getRoomName().equals("Shadowed Plains")){
-      fadeMusic(music, 30);
-      music.stop();
-      startMusic("data/audio/background.wav", DEFAULT_BACKGROUND_MUSIC_VOL);
+      crossfadeMusic(BACKGROUND_MUSIC, DEFAULT_BACKGROUND_MUSIC_VOL, MUSIC_CROSSFADE_MS);
     }
   }
 
@@ -950,18 +1412,14 @@ public class Game implements java.io.Serializable {
   public void sasquatch(){
     Enemy sasquatch = enemyMap.get("sasquatch");
     if (!(sasquatch.getHealth() <= 0)){
-      isInTrial = true;
-      trial = 1;
+      startTrial(1);
       gui.println("The Sasquatch steps out of the cave.");
       gui.println(sasquatch.getCatchphrase() + " He screams.");
       gui.println("You panic, frozen with terror.");
       gui.println("Then you notice the pile of rocks on the ground. Maybe they can be used as a weapon?");
-      fadeMusic(music);
-      startMusic("data/audio/fighting.wav", -60);
-      fadeInMusic(music, 1, -60, -25);
+      crossfadeMusic(FIGHTING_MUSIC, FIGHTING_MUSIC_VOL, FIGHT_CROSSFADE_MS);
       if (enemyAttack(sasquatch)) return;
-      fadeMusic(music, 20);
-      startMusic("data/audio/background.wav", DEFAULT_BACKGROUND_MUSIC_VOL);
+      crossfadeMusic(BACKGROUND_MUSIC, DEFAULT_BACKGROUND_MUSIC_VOL, FIGHT_CROSSFADE_MS);
       gui.println();
       gui.println("Just inside of the cave you can see muddy pieces of paper. What are they?");
       isInTrial = false;
@@ -987,16 +1445,12 @@ public class Game implements java.io.Serializable {
   public void vaccuum(){
     Enemy vaccuum = enemyMap.get("vaccuum");
     if (vaccuum.getHealth() > 0){
-      isInTrial = true;
-      trial = 2;
+      startTrial(2);
       gui.println("The Vaccuum wheels itself towards you.");
       gui.println(vaccuum.getCatchphrase() + " Your ears ache from the noise.");
-      fadeMusic(music);
-      startMusic("data/audio/fighting.wav", -60);
-      fadeInMusic(music, 1, -60, -25);
+      crossfadeMusic(FIGHTING_MUSIC, FIGHTING_MUSIC_VOL, FIGHT_CROSSFADE_MS);
       if (enemyAttack(vaccuum)) return;
-      fadeMusic(music, 20);
-      startMusic("data/audio/background.wav", DEFAULT_BACKGROUND_MUSIC_VOL);
+      crossfadeMusic(BACKGROUND_MUSIC, DEFAULT_BACKGROUND_MUSIC_VOL, FIGHT_CROSSFADE_MS);
       gui.println();
       gui.println("Past its lifeless body, you can see an aluminum ladder.");
       gui.println("A brass key lies on the floor, dropped by the vaccuum.");
@@ -1023,18 +1477,14 @@ public class Game implements java.io.Serializable {
   public void robot(){
     Enemy robot = enemyMap.get("friends robot");
     if (robot.getHealth() > 0){
-      isInTrial = true;
-      trial = 3;
+      startTrial(3);
       gui.println("The Friends Robot marches mechanically, gazing at you with a happy expression.");
       gui.println(robot.getCatchphrase() + " It beeps. It is blocking your path. You have no choice but to defeat it.");
-      fadeMusic(music);
-      startMusic("data/audio/fighting.wav", -60);
-      fadeInMusic(music, 1, -60, -25);
+      crossfadeMusic(FIGHTING_MUSIC, FIGHTING_MUSIC_VOL, FIGHT_CROSSFADE_MS);
       if (enemyAttack(robot)) return;
       player.setTrial(5);
       gui.println();
-      fadeMusic(music, 20);
-      startMusic("data/audio/background.wav", DEFAULT_BACKGROUND_MUSIC_VOL);
+      crossfadeMusic(BACKGROUND_MUSIC, DEFAULT_BACKGROUND_MUSIC_VOL, FIGHT_CROSSFADE_MS);
       isInTrial = false;
       trial = 0;
     }
@@ -1052,21 +1502,20 @@ public class Game implements java.io.Serializable {
   public void deslauriers(){
     Enemy deslauriers = enemyMap.get("deslauriers");
     if (!deslauriers.getIsDead()){
-      isInTrial = true;
-      trial = 4;
+      startTrial(4);
       gui.println("Eyes blazing, Mr. DesLauriers suddenly stands up from his throne. He is twelve feet tall. \nHe is the guardian of this realm, and you know you must defeat him.");
       gui.println(deslauriers.getCatchphrase() + " He yells.");
-      fadeMusic(music);
-      startMusic("data/audio/end.wav", -60);
-      fadeInMusic(music, 10, -60, 0);
+      crossfadeMusic("data/audio/end.wav", 0, FIGHT_CROSSFADE_MS);
       if (enemyAttack(deslauriers)) return;
-      fadeMusic(music, 20);
-      startMusic("data/audio/background.wav", DEFAULT_BACKGROUND_MUSIC_VOL);
+      crossfadeMusic(BACKGROUND_MUSIC, DEFAULT_BACKGROUND_MUSIC_VOL, FIGHT_CROSSFADE_MS);
       gameEnded = true;
       gui.cutsceneMode(true);
-      sleep(2000);
-      gui.println("\nMr. DesLauriers ascends towards the gods, eyes illuminated. With a flash, he disappears.");
-      gui.println("The world seems a little more vibrant.");
+      playCutscene(new Cutscene()
+        .pause(2000)
+        .then(() -> {
+          gui.println("\nMr. DesLauriers ascends towards the gods, eyes illuminated. With a flash, he disappears.");
+          gui.println("The world seems a little more vibrant.");
+        }));
       endOfGame();
       isInTrial = false;
       trial = 0;
@@ -1085,10 +1534,10 @@ public class Game implements java.io.Serializable {
    */
   private boolean enemyAttack(Enemy enemy) {
     while(enemy.getHealth() > 0){
-      int tempDamage = enemy.getDamage();
-      Command command = parser.getCommand();
+      int tempDamage = enemy.getDamage(random);
+      Command command = parser.getCommand(readCommand());
       boolean exit = processCommand(command);
-      if (exit) return true;
+      if (exit || stateRestored) return true;
       if (!enemy.getIsDead()){
         if (enemy.isThisEnemy("deslauriers") && player.getHealth() - tempDamage < 1){
           tempDamage = player.getHealth() - 1;
@@ -1101,24 +1550,38 @@ public class Game implements java.io.Serializable {
             gui.println();
             gui.println("You have perished!");
             gui.println("You are evidently not future Whisperer material.");
-            gui.println("Press [y] to play again, [n] to quit.\n");
+            gui.println("Press [r] to retry the trial, [u] to undo your last move, [y] to play again, [n] to quit.\n");
             boolean validInput = false;
             while(!validInput){
-              String in = gui.readCommand();
+              String in = readCommand();
               if (in.equals("y")){
                 gui.commandsPrinted(true);
                 restartGame();
                 validInput = true;
                 return true;
-              } else if (in.equals("n")) endGame();
+              } else if (in.equals("r") || in.equals("retry") || in.equals("retry trial")){
+                gui.commandsPrinted(true);
+                restoreState(trialCheckpoint);
+                gui.printInfo("Retrying the trial.\n");
+                return true;
+              } else if (in.equals("u")){
+                gui.commandsPrinted(true);
+                restoreState(history.current());
+                gui.printInfo("Undid your last move.\n");
+                return true;
+              } else if (in.equals("n")){
+                endGame();
+                return true;
+              }
             }
           }
-          gui.println(enemy.getHurtMessage() + " You lost " + tempDamage + " HP!");
+          gui.println(enemy.getHurtMessage(random) + " You lost " + tempDamage + " HP!");
         } else {
           sleep(1000);
           gui.println("Mr. DesLauriers tried to attack, but you blocked with The Shield of Tableland!");
         }
       }
+      recordHistory();
     }
     return false;
   }
@@ -1131,18 +1594,25 @@ public class Game implements java.io.Serializable {
   private void moralSupport() {
     supportCheck = true;
     gui.cutsceneMode(true);
-    gui.println("Mr. DesLauriers' slashes you down to 1 HP!");
-    gui.println("You can feel your surroundings grow fainter... \n");
-    sleep(3000);
-    gui.println("Suddenly, you feel a warmth in your pocket. The moral support has started to glow!");
-    gui.println("Picking it up, it imbues with your soul. Voices of those who support you echo in your ears. \n");
-    gui.println("\"You can do it!\"");
-    gui.println("\"Don't give up!\"");
-    gui.println("\"I believe in you!\"");
-    sleep(4500);
-    gui.println("\nYour health has been completely restored!");
-    gui.println("Your sword starts shining with the power of the gods. It now deals 100 damage!");
-    gui.println("You face the enemy with a newfound confidence! You can do this!\n");
+    playCutscene(new Cutscene()
+      .then(() -> {
+        gui.println("Mr. DesLauriers' slashes you down to 1 HP!");
+        gui.println("You can feel your surroundings grow fainter... \n");
+      })
+      .pause(3000)
+      .then(() -> {
+        gui.println("Suddenly, you feel a warmth in your pocket. The moral support has started to glow!");
+        gui.println("Picking it up, it imbues with your soul. Voices of those who support you echo in your ears. \n");
+        gui.println("\"You can do it!\"");
+        gui.println("\"Don't give up!\"");
+        gui.println("\"I believe in you!\"");
+      })
+      .pause(4500)
+      .then(() -> {
+        gui.println("\nYour health has been completely restored!");
+        gui.println("Your sword starts shining with the power of the gods. It now deals 100 damage!");
+        gui.println("You face the enemy with a newfound confidence! You can do this!\n");
+      }));
     gui.cutsceneMode(false);
     player.maxHeal();
     itemMap.get("sword").setDamage(100);
@@ -1157,21 +1627,28 @@ public class Game implements java.io.Serializable {
   public void newsNewsScroll(){
     if (!hasAnsweredNewsQuestions){
       gui.cutsceneMode(true);
-      gui.println();
-      gui.println("On the other side of the room, an antique scroll sits in a clear, glass case.");
-      sleep(2000);
-      gui.println();
-      gui.println("You hear a booming, disembodied voice: \"Have you come to steal the precious scroll of News News, traveller? Well, you must solve these riddles six.\"");
-      sleep(4000);
-      gui.println();
-      gui.println("Question 1: How many Whisperer articles have there been?");
-      gui.println("Question 2: How many planets are in our solar system, not including dwarf planets?");
-      gui.println("Question 3: What is the largest number represented by a single character in hexadecimal?");
-      gui.println("Question 4: What is the average age of the grade elevens?");
-      gui.println("Question 5: What is the lowest prime number with consecutive digits?");
-      gui.println("Question 6: What is the answer to the ultimate question of life, the universe, and everything?");
-      gui.println("\"You will have six numbers, each an answer to the six questions. Only then you will prove your worth!\"");
-      gui.println("\"What is the code?\"");
+      playCutscene(new Cutscene()
+        .then(() -> {
+          gui.println();
+          gui.println("On the other side of the room, an antique scroll sits in a clear, glass case.");
+        })
+        .pause(2000)
+        .then(() -> {
+          gui.println();
+          gui.println("You hear a booming, disembodied voice: \"Have you come to steal the precious scroll of News News, traveller? Well, you must solve these riddles six.\"");
+        })
+        .pause(4000)
+        .then(() -> {
+          gui.println();
+          gui.println("Question 1: How many Whisperer articles have there been?");
+          gui.println("Question 2: How many planets are in our solar system, not including dwarf planets?");
+          gui.println("Question 3: What is the largest number represented by a single character in hexadecimal?");
+          gui.println("Question 4: What is the average age of the grade elevens?");
+          gui.println("Question 5: What is the lowest prime number with consecutive digits?");
+          gui.println("Question 6: What is the answer to the ultimate question of life, the universe, and everything?");
+          gui.println("\"You will have six numbers, each an answer to the six questions. Only then you will prove your worth!\"");
+          gui.println("\"What is the code?\"");
+        }));
       if (newsNewsAnswers()){
         gui.cutsceneMode(true);
         gui.println("\"Wow. I'm truly impressed. Those are the right numbers! Traveller, you have proved yourself more than worthy of the scroll.\"");
@@ -1203,7 +1680,7 @@ public class Game implements java.io.Serializable {
    */
   private boolean newsNewsAnswers() {
     gui.cutsceneMode(false);
-    String in = gui.readCommand();
+    String in = readCommand();
     if (in.equalsIgnoreCase("4 8 15 16 23 42") || in.equalsIgnoreCase("4, 8, 15, 16, 23, 42") || in.equalsIgnoreCase("4,8,15,16,23,42")){
       return true;
     } return false;
@@ -1218,35 +1695,50 @@ public class Game implements java.io.Serializable {
   public void dogParadise(){
     if (!player.getTrial(7)){
       gui.cutsceneMode(true);
-      sleep(3000);
-      gui.println();
-      gui.println("Three adorable dogs walk up to you. The first dog is a caramel mini-labradoodle. The second is a lighter-coloured cockapoo. The third, a brown-and-white spotted Australian lab.");
-      gui.println("Their name tags read 'Lucky', 'Luna', and 'Maggie' respectively.");
-      sleep(6500);
-      gui.println();
-      gui.println("The dog named Lucky speaks to you. \"Hello, potential Whisperer successor. We would like to offer you our guidance as you complete your arduous journey.\"");
-      inventory.addItem(itemMap.get("moral support"));
-      gui.println("\"We have bestowed the glowing orb of moral support upon you.\"\n");
-      gui.println("Moral support taken!");
-      gui.println(itemMap.get("moral support").getDescription());
-      sleep(7500);
-      gui.println();
-      gui.println("The dog named Luna speaks to you. \"This, mortal, is Moral Support. It will glow brighter than all the stars in the god's realm, and fill your head with the most encouraging of thoughts.\"");
-      sleep(5500);
-      gui.println();
-      gui.println("The dog named Maggie speaks to you. \"No being, mortal or deity, can harness its power alone. Its ethereal glow will activate when you need it most.\"");
-      sleep(4000);
-      gui.println();
-      gui.println("You feel a sense of calm wash over you. You feel resolve for the first time in this whole journey.");
-      sleep(3000);
-      gui.println();
-      gui.println("Lucky speaks. \"I sense your great potential. You have somewhere you need to be.\"");
-      gui.println("Luna speaks. \"You are the Whisperer's successor. You must save our world.\"");
-      gui.println("Maggie speaks. \"Do not fall astray from your path. We all will watch your journey with the greatest interest.\"");
-      sleep(5500);
-      gui.println();
-      player.setTrial(7);
-      gui.println("The canine trio suddenly vanish when you blink, leaving you bewildered.");
+      playCutscene(new Cutscene()
+        .pause(3000)
+        .then(() -> {
+          gui.println();
+          gui.println("Three adorable dogs walk up to you. The first dog is a caramel mini-labradoodle. The second is a lighter-coloured cockapoo. The third, a brown-and-white spotted Australian lab.");
+          gui.println("Their name tags read 'Lucky', 'Luna', and 'Maggie' respectively.");
+        })
+        .pause(6500)
+        .then(() -> {
+          gui.println();
+          gui.println("The dog named Lucky speaks to you. \"Hello, potential Whisperer successor. We would like to offer you our guidance as you complete your arduous journey.\"");
+          inventory.addItem(itemMap.get("moral support"));
+          gui.println("\"We have bestowed the glowing orb of moral support upon you.\"\n");
+          gui.println("Moral support taken!");
+          gui.println(itemMap.get("moral support").getDescription());
+        })
+        .pause(7500)
+        .then(() -> {
+          gui.println();
+          gui.println("The dog named Luna speaks to you. \"This, mortal, is Moral Support. It will glow brighter than all the stars in the god's realm, and fill your head with the most encouraging of thoughts.\"");
+        })
+        .pause(5500)
+        .then(() -> {
+          gui.println();
+          gui.println("The dog named Maggie speaks to you. \"No being, mortal or deity, can harness its power alone. Its ethereal glow will activate when you need it most.\"");
+        })
+        .pause(4000)
+        .then(() -> {
+          gui.println();
+          gui.println("You feel a sense of calm wash over you. You feel resolve for the first time in this whole journey.");
+        })
+        .pause(3000)
+        .then(() -> {
+          gui.println();
+          gui.println("Lucky speaks. \"I sense your great potential. You have somewhere you need to be.\"");
+          gui.println("Luna speaks. \"You are the Whisperer's successor. You must save our world.\"");
+          gui.println("Maggie speaks. \"Do not fall astray from your path. We all will watch your journey with the greatest interest.\"");
+        })
+        .pause(5500)
+        .then(() -> {
+          gui.println();
+          player.setTrial(7);
+          gui.println("The canine trio suddenly vanish when you blink, leaving you bewildered.");
+        }));
       gui.cutsceneMode(false);
     } else {
       gui.println("There is nothing for you here.");
@@ -1261,17 +1753,13 @@ public class Game implements java.io.Serializable {
   public void balloony(){
     Enemy balloony = enemyMap.get("balloony");
     if (!player.getTrial(6) && balloony.getHealth() > 0){
-      isInTrial = true;
-      trial = 5;
+      startTrial(5);
       gui.println("Floating above the wreckage is a large blue balloon.");
       gui.println("\"My name is Balloony, I am the rightful head of customer service of Tableland. Prepare to die.\"");
       gui.println(balloony.getCatchphrase());
-      fadeMusic(music);
-      startMusic("data/audio/fighting.wav", -60);
-      fadeInMusic(music, 1, -60, -25);
+      crossfadeMusic(FIGHTING_MUSIC, FIGHTING_MUSIC_VOL, FIGHT_CROSSFADE_MS);
       if (enemyAttack(balloony)) return;
-      fadeMusic(music, 20);
-      startMusic("data/audio/background.wav", DEFAULT_BACKGROUND_MUSIC_VOL);
+      crossfadeMusic(BACKGROUND_MUSIC, DEFAULT_BACKGROUND_MUSIC_VOL, FIGHT_CROSSFADE_MS);
       gui.println();
       isInTrial = false;
       trial = 0;
@@ -1328,7 +1816,7 @@ public class Game implements java.io.Serializable {
   public boolean buyFurs(){
     boolean validInput = false;
     while(!validInput){
-      String in = gui.readCommand();
+      String in = readCommand();
       if (in.equalsIgnoreCase("y") || in.equalsIgnoreCase("yes")) return true;
       else if (in.equalsIgnoreCase("n") || in.equalsIgnoreCase("no")){
         gui.println("\"Then what are you doing in a fur shop? Buy something or get out!\"");
@@ -1374,7 +1862,7 @@ public class Game implements java.io.Serializable {
    * @author Michael - everything
    */
   public boolean correctCode(){
-    String in = gui.readCommand();
+    String in = readCommand();
     if (in.equalsIgnoreCase("2956")) return true;
     return false;
   }
@@ -1390,8 +1878,7 @@ public class Game implements java.io.Serializable {
         if ((secondWord.equals("balloon") || secondWord.equals("balloony")) && inventory.hasItem(itemMap.get("balloony")) && currentRoom.equals(roomMap.get("Shadowed Plains"))){
           gui.println("You inflated Balloony's corpse.");
           gui.println("You feel the air rush around you, as the balloon propels you into the Gods' domain.");
-          fadeMusic(music, 30);
-          startMusic("data/audio/sky.wav", DEFAULT_BACKGROUND_MUSIC_VOL - 5);
+          crossfadeMusic("data/audio/sky.wav", DEFAULT_BACKGROUND_MUSIC_VOL - 5, MUSIC_CROSSFADE_MS);
           currentRoom = roomMap.get("Sky Temple Pavillion");
           gui.println(currentRoom.longDescription());
         } else if (!player.getTalkedToSkyGods()){
@@ -1418,19 +1905,26 @@ public class Game implements java.io.Serializable {
       gui.cutsceneMode(true);
       gui.println("You see a pair of frogs at the entrance.");
       if (!player.getTrial(9)) {
-        sleep(2000);
-        gui.println();
-        gui.println("\"Hello future Whisperer. We are messagers from the Sky Gods. We are here to give you further instructions on how to rescue your friend and save Tableland.\" says one of the frogs.");
-        gui.println("\"My name is Madlene,\" the first frog says, \"and this is Jorge,\" she gestures to the other frog.");
-        sleep(5500);
-        gui.println();
-        gui.println("\"You must venture forth into the plains of Hell in West Tableland and save your friend from the being that resides in the Volcano!\" Jorge says. ");
-        sleep(3500);
-        gui.println();
-        gui.println("Madlene hopped up to the tunnel and removed the boards from the tunnel.");
-        gui.println("You can peer into the tunnel, but all you see is darkness.");
-        gui.println("\"Go forward and save your friend!\" Jorge says. ");
-        sleep(3000);
+        playCutscene(new Cutscene()
+          .pause(2000)
+          .then(() -> {
+            gui.println();
+            gui.println("\"Hello future Whisperer. We are messagers from the Sky Gods. We are here to give you further instructions on how to rescue your friend and save Tableland.\" says one of the frogs.");
+            gui.println("\"My name is Madlene,\" the first frog says, \"and this is Jorge,\" she gestures to the other frog.");
+          })
+          .pause(5500)
+          .then(() -> {
+            gui.println();
+            gui.println("\"You must venture forth into the plains of Hell in West Tableland and save your friend from the being that resides in the Volcano!\" Jorge says. ");
+          })
+          .pause(3500)
+          .then(() -> {
+            gui.println();
+            gui.println("Madlene hopped up to the tunnel and removed the boards from the tunnel.");
+            gui.println("You can peer into the tunnel, but all you see is darkness.");
+            gui.println("\"Go forward and save your friend!\" Jorge says. ");
+          })
+          .pause(3000));
       } else {
         gui.println();
         gui.println("\"I urge you forward, future Whisperer! Connie must be saved!\" Madlene says.");
@@ -1450,32 +1944,45 @@ public class Game implements java.io.Serializable {
    */
   public void skyGods(){
     gui.cutsceneMode(true);
-    gui.println("The soothing ambience of the gods ring in your ears. It feels like your brain is being massaged by a baby deer.");
-    gui.println("You glance up from your prayer and see the three towering thrones. On them sit three humans, who were not there before. Somehow, you know they are the true Gods of Tableland.\n");
-    sleep(6000);
-    gui.println("\"Welcome to the Temple of the Sky Gods, traveller.\" the first figure says.");
-    gui.println("\"You have made it past the first eight trials, traveller.\" the second figure says.");
-    gui.println("\"All you must do to prove yourself worthy of the title Whisperer...  Venture forth west and rescue the missing Customer Serviceman, from the being that resides there.\" says the third god.");
-    gui.println("\"To aid you on your journey, we bestow upon you these divine artifacts.\" the first figure says.\n");
-    sleep(9000);
-    removeItems();
-    inventory.addItem(itemMap.get("the sword of tableland"));
-    inventory.addItem(itemMap.get("the shield of tableland"));
-    gui.println("The Sword of Tableland taken!");
-    gui.println(itemMap.get("the sword of tableland").getDescription());
-    gui.println("\nThe Shield of Tableland taken!");
-    gui.println(itemMap.get("the shield of tableland").getDescription());
-    sleep(3000);
-    gui.println("\n\"We have graced you with the sacred Sword and Shield of Tableland. These are the vices you must use.\" says the first god.");
-    gui.println("\"We'll be taking any of your worthless mortal trinkets. You won't be needing any of those, I'm afraid.\" says the second god.");
-    gui.println("\"Now go! Defeat what thou awaits you! Reclaim your destiny, future Whisperer!\" says the third god.\n");
-    sleep(7000);
-    player.talkedToSkyGods();
-    gui.println("With that, the gods vanish before your eyes, and the peaceful ambience returns.");
-    sleep(3000);
-    gui.println();
-    gui.println("You know what you must do.");
-    gui.println("Go to Hell to save your friend, once and for all.");
+    playCutscene(new Cutscene()
+      .then(() -> {
+        gui.println("The soothing ambience of the gods ring in your ears. It feels like your brain is being massaged by a baby deer.");
+        gui.println("You glance up from your prayer and see the three towering thrones. On them sit three humans, who were not there before. Somehow, you know they are the true Gods of Tableland.\n");
+      })
+      .pause(6000)
+      .then(() -> {
+        gui.println("\"Welcome to the Temple of the Sky Gods, traveller.\" the first figure says.");
+        gui.println("\"You have made it past the first eight trials, traveller.\" the second figure says.");
+        gui.println("\"All you must do to prove yourself worthy of the title Whisperer...  Venture forth west and rescue the missing Customer Serviceman, from the being that resides there.\" says the third god.");
+        gui.println("\"To aid you on your journey, we bestow upon you these divine artifacts.\" the first figure says.\n");
+      })
+      .pause(9000)
+      .then(() -> {
+        removeItems();
+        inventory.addItem(itemMap.get("the sword of tableland"));
+        inventory.addItem(itemMap.get("the shield of tableland"));
+        gui.println("The Sword of Tableland taken!");
+        gui.println(itemMap.get("the sword of tableland").getDescription());
+        gui.println("\nThe Shield of Tableland taken!");
+        gui.println(itemMap.get("the shield of tableland").getDescription());
+      })
+      .pause(3000)
+      .then(() -> {
+        gui.println("\n\"We have graced you with the sacred Sword and Shield of Tableland. These are the vices you must use.\" says the first god.");
+        gui.println("\"We'll be taking any of your worthless mortal trinkets. You won't be needing any of those, I'm afraid.\" says the second god.");
+        gui.println("\"Now go! Defeat what thou awaits you! Reclaim your destiny, future Whisperer!\" says the third god.\n");
+      })
+      .pause(7000)
+      .then(() -> {
+        player.talkedToSkyGods();
+        gui.println("With that, the gods vanish before your eyes, and the peaceful ambience returns.");
+      })
+      .pause(3000)
+      .then(() -> {
+        gui.println();
+        gui.println("You know what you must do.");
+        gui.println("Go to Hell to save your friend, once and for all.");
+      }));
     gui.cutsceneMode(false);
   }
 
@@ -1663,11 +2170,24 @@ public class Game implements java.io.Serializable {
     gui.println("Your current health is " + player.getHealth() + ".");
   }
 
+  /**
+   * Returns whether or not you can go in the direction specified from the current room,
+   * giving a hint first if Balloony could help.
+   * @param direction - The direction to go.
+   * @throws IllegalArgumentException if the direction is not valid.
+   */
+  private boolean canGoDirection(String direction) {
+    if (currentRoom.getRoomName().equals("Shadowed Plains") && inventory.hasItem(itemMap.get("balloony"))){
+      printBalloonHelp();
+    }
+    return currentRoom.canGoDirection(direction, player);
+  }
+
   /**
    *  If you try to 'go up' with balloony in your inventory
    * @author Michael - everything
    */
-  public static void printBalloonHelp() {
+  private void printBalloonHelp() {
     gui.println("The clouds are too high in the sky. Maybe try inflating Balloony?");
   }
 
@@ -1675,7 +2195,7 @@ public class Game implements java.io.Serializable {
    *  If you try to explore without reading tome
    * @author Michael - everything
    */
-  public static void printTomeHelp() {
+  private void printTomeHelp() {
     gui.println("Maybe you should read the Tome of Tableland first.");
   }
 
@@ -1686,13 +2206,13 @@ public class Game implements java.io.Serializable {
    * @author Michael - dialogue
    */
   public void printHelp(Command command) {
-    if (command.hasArgs()) Parser.printCommandHelp(command);
+    if (command.hasArgs()) parser.printCommandHelp(command);
     else {
       gui.println("You are an adventurer in the marvelous lands of Tableland,");
       gui.println("always in search for things to do and items to collect.");
       gui.println();
       gui.println("The available commands are:");
-      Parser.showCommands();
+      parser.showCommands();
     }    
   }
 
@@ -1712,23 +2232,23 @@ public class Game implements java.io.Serializable {
       musicPlaying = true;
       gui.println("Music started!");
     } 
-    else if (Game.getMusicPlayer().getVolume() > -75.1f && command.getStringifiedArgs().equals("volume-down")){
-      music.setVolume(Game.getMusicPlayer().getVolume() - 5);
+    else if (getMusicPlayer().getVolume() > -75.1f && command.getStringifiedArgs().equals("volume-down")){
+      music.setVolume(getMusicPlayer().getVolume() - 5);
       musicVolumeOffset -= 5;
       gui.println("Music volume down.");
     } 
-    else if (Game.getMusicPlayer().getVolume() < -5f && command.getStringifiedArgs().equals("volume-up")){
-      music.setVolume(Game.getMusicPlayer().getVolume() + 5);
+    else if (getMusicPlayer().getVolume() < -5f && command.getStringifiedArgs().equals("volume-up")){
+      music.setVolume(getMusicPlayer().getVolume() + 5);
       musicVolumeOffset += 5;
       gui.println("Music volume up.");
     } 
-    else if (Game.getMusicPlayer().getVolume() > -75.1f && command.getStringifiedArgs().equals("volume down")){
-      music.setVolume(Game.getMusicPlayer().getVolume() - 5);
+    else if (getMusicPlayer().getVolume() > -75.1f && command.getStringifiedArgs().equals("volume down")){
+      music.setVolume(getMusicPlayer().getVolume() - 5);
       musicVolumeOffset -= 5;
       gui.println("Music volume down.");
     } 
-    else if (Game.getMusicPlayer().getVolume() < -5f && command.getStringifiedArgs().equals("volume up")){
-      music.setVolume(Game.getMusicPlayer().getVolume() + 5);
+    else if (getMusicPlayer().getVolume() < -5f && command.getStringifiedArgs().equals("volume up")){
+      music.setVolume(getMusicPlayer().getVolume() + 5);
       musicVolumeOffset += 5;
       gui.println("Music volume up.");
     } 
@@ -1745,30 +2265,37 @@ public class Game implements java.io.Serializable {
   private void endOfGame() {
     gameEnded = true;
     gui.cutsceneMode(true);
-    sleep(3500);
-    gui.println();
-    gui.println("You feel the ever-changing world shift once again under your feet.");
-    gui.println("With the power of the gods at your side, you have vanquished the terrorizing foe and have saved this realm. \n");
-    sleep(5000);
-    gui.println("Suddenly, Constantine, co-head of Customer Service, appears before you, hovering metres in the air.");
-    gui.println("He motions cryptically with his hand. \n");
-    sleep(4500);
-    gui.println("The earth shakes once more. The volcano is about to collapse on itself!");
-    gui.println("You dash to its edges, looking for a way out, when your vision suddenly blanks... \n");
-    sleep(4500);
+    playCutscene(new Cutscene()
+      .pause(3500)
+      .then(() -> {
+        gui.println();
+        gui.println("You feel the ever-changing world shift once again under your feet.");
+        gui.println("With the power of the gods at your side, you have vanquished the terrorizing foe and have saved this realm. \n");
+      })
+      .pause(5000)
+      .then(() -> {
+        gui.println("Suddenly, Constantine, co-head of Customer Service, appears before you, hovering metres in the air.");
+        gui.println("He motions cryptically with his hand. \n");
+      })
+      .pause(4500)
+      .then(() -> {
+        gui.println("The earth shakes once more. The volcano is about to collapse on itself!");
+        gui.println("You dash to its edges, looking for a way out, when your vision suddenly blanks... \n");
+      })
+      .pause(4500));
     gui.println("To be continued...");
     gui.println("\nPress Enter to continue.");
     gui.cutsceneMode(false);
-    gui.readCommand();
+    readCommand();
     gui.reset();
     gui.centerText(false);
     gui.cutsceneMode(true);
-    fadeMusic(music, 30);
+    fadeMusic(music, CREDITS_FADE_MS, null); // under the credits music, which starts straight away
     MusicPlayer credits = null;
     try {
-      credits = new MusicPlayer("data/audio/credits.wav", false);
+      credits = new MusicPlayer(mixer, "data/audio/credits.wav", false);
     } catch (FileNotFoundException e) {
-      GameError.fileNotFound("data/audio/credits.wav");
+      GameError.fileNotFound(gui, "data/audio/credits.wav");
     }
     credits.setVolume(0 + musicVolumeOffset <= 0 ? musicVolumeOffset : 0);
     if (!musicPlaying) credits.stop();
@@ -1822,68 +2349,70 @@ public class Game implements java.io.Serializable {
     gui.cutsceneMode(false);
     boolean validInput = false;
     while(!validInput){
-      String in = gui.readCommand();
+      String in = readCommand();
       if (in.equals("y")){
-        credits.stop();
+        credits.close();
         music.setVolume(DEFAULT_BACKGROUND_MUSIC_VOL);
         if (musicPlaying) music.play();
         restartGame();
         validInput = true;
-      } else if (in.equals("n")) endGame();
+      } else if (in.equals("n")){
+        endGame();
+        validInput = true;
+      }
     }
     gui.commandsPrinted(true);
   }
 
   /**
-   * Fades the specified MusicPlayer out based on the time factor specified.
+   * Fades the specified MusicPlayer out over the time specified, then stops it.
+   * Returns straight away; the fade is applied by the audio thread as the music plays.
    * @param toFade - The MusicPlayer to fade out.
-   * @param timeFactor - The time factor for the fade.
-   * This is roughly equivalent to a tenth of a second, so
-   * a time factor of 40 is roughly equivalent to 4 seconds.
+   * @param millis - How long the fade takes, in milliseconds.
+   * @param then - What to do once the music has stopped, or null. It runs on the fade scheduler,
+   * and not at all if the volume is changed before the fade ends.
    * @author Stefano - everything
    */
-  private void fadeMusic(MusicPlayer toFade, int timeFactor) {
-    int vol = (int) toFade.getVolume();
-    while(toFade.getVolume() > -80){
-      toFade.setVolume(music.getVolume() - 0.000004);
-      if (toFade.getVolume() % 1 == 0) sleep(timeFactor - (vol + 20) > 0 ? timeFactor - (vol + 20) : 0);
-    }
-    toFade.stop();
+  private void fadeMusic(MusicPlayer toFade, long millis, Runnable then) {
+    toFade.fadeTo(-80, replay != null ? 0 : millis, () -> {
+      toFade.stop();
+      if (then != null) then.run();
+    });
   }
 
   /**
-   * Fades the specified MusicPlayer out.
-   * @param toFade - The MusicPlayer to fade out.
-   * @author Stefano - everything
-   */
-  private void fadeMusic(MusicPlayer toFade) {
-    while(toFade.getVolume() > -64){
-      toFade.setVolume(music.getVolume() - 0.000002);
-    }
-    toFade.stop();
-  }
-
-  /**
-   * Fades the specified MusicPlayer in based on the time factor specified.
-   * Also starts the music.
+   * Fades the specified MusicPlayer in over the time specified. Also starts the music.
+   * Returns straight away; the fade is applied by the audio thread as the music plays.
    * @param toFade - The MusicPlayer to fade in.
-   * @param timeFactor - The time factor for the fade.
-   * This is not a specific amount of time.
+   * @param millis - How long the fade takes, in milliseconds.
    * @param fromVol - Volume to start at.
    * @param toVol - Volume to get to.
+   * @param then - What to do once the fade ends, or null. It runs on the fade scheduler.
    * @author Stefano - everything
    */
-  private void fadeInMusic(MusicPlayer toFade, int timeFactor, double fromVol, double toVol) {
+  private void fadeInMusic(MusicPlayer toFade, long millis, double fromVol, double toVol, Runnable then) {
     toFade.setVolume(fromVol);
     if (musicPlaying) toFade.play();
-    while(toFade.getVolume() < toVol - 1){
-      toFade.setVolume(music.getVolume() + 0.000004);
-      if (toFade.getVolume() % 1 == 0) sleep(timeFactor > 0 ? timeFactor : 0);
-    }
+    toFade.fadeTo(toVol, replay != null ? 0 : millis, then);
   }
 
   //Below are utility functions, serving a purpose only for internal game management.
 
+  /**
+   * Plays a cutscene and waits for it to finish. The player can fast-forward it with Enter,
+   * Space or Escape, and it runs without pauses while a crashed session is being recovered.
+   * @param cutscene - the cutscene to play.
+   */
+  private void playCutscene(Cutscene cutscene) {
+    Cutscene.Playback playback = cutscene.play(replay != null);
+    gui.onSkip(playback::fastForward);
+    try {
+      playback.run();
+    } finally {
+      gui.onSkip(null);
+    }
+  }
+
   /**
    * Causes the currently executing thread to sleep (temporarily cease execution) 
    * for the specified number of milliseconds, subject to the precision and accuracy 
@@ -1892,28 +2421,13 @@ public class Game implements java.io.Serializable {
    * @author Stefano - everything
    */
   public void sleep(long m){
+    if (replay != null) return; // don't replay cutscene pauses while recovering
     try {
       Thread.sleep(m);
     } catch (InterruptedException e) {
     }
   }
 
-  /**
-   * Resets the game save state.
-   * @author Stefano - everything
-   */
-  private void resetSaveState() {
-    try {
-      FileOutputStream fileOut = new FileOutputStream(GAME_SAVE_LOCATION);
-      ObjectOutputStream out = new ObjectOutputStream(fileOut);
-      out.writeObject(null);
-      out.close();
-      fileOut.close();
-    } catch (IOException i) {
-      gui.printerr("Error while resetting game save! Could not save.");
-    }
-  }
-
   /**
    * Returns the string for use in the GUI's info panel.
    * @return The string.
@@ -1921,12 +2435,28 @@ public class Game implements java.io.Serializable {
    */
   public String getGUIGameString() {
     if (gameEnded) return "";
-    String roomExString = "";
-    ArrayList<String> exits = new ArrayList<String>();
-    for (Exit exit : currentRoom.getExits()) {
-        exits.add(exit.getDirection());
-    }
-    roomExString = String.join(", ", exits);
-    return "Inventory: " + inventory.getString() + " | Health: " + player.getHealth() + " | Exits: " + roomExString;
+    return "Inventory: " + inventory.getString() + " | Health: " + player.getHealth() + " | Exits: " + currentRoom.exitList();
+  }
+
+  /**
+   * Checks whether anything shown in the status bar has changed since this was last called.
+   * Only the version counters and identities of the inventory, player and current room are
+   * compared, so this is cheap enough to call on every print.
+   * @return True if the status bar text needs rebuilding.
+   */
+  public boolean isStatusDirty() {
+    if (currentRoom == null || inventory == null || player == null) return false;
+    if (inventory == statusInventory && inventory.getVersion() == statusInventoryVersion
+        && player == statusPlayer && player.getVersion() == statusPlayerVersion
+        && currentRoom == statusRoom && currentRoom.getVersion() == statusRoomVersion
+        && gameEnded == statusGameEnded) return false;
+    statusInventory = inventory;
+    statusInventoryVersion = inventory.getVersion();
+    statusPlayer = player;
+    statusPlayerVersion = player.getVersion();
+    statusRoom = currentRoom;
+    statusRoomVersion = currentRoom.getVersion();
+    statusGameEnded = gameEnded;
+    return true;
   }
 }
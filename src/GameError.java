@@ -1,18 +1,29 @@
-public class GameError {
-    private static GUI gui = GUI.getGUI();
+import java.util.List;
 
-    public static void javaDependenciesNotFound() throws Error{
+public class GameError {
+    public static void javaDependenciesNotFound(Frontend gui) throws Error{
         gui.printerr("ERROR! Required java dependencies not found.");
         gui.printerr("Please ensure the 'lib' folder exists and has not been modified.");
         throw new Error();
     }
 
-    public static void fileNotFound(String file) throws Error{
+    public static void fileNotFound(Frontend gui, String file) throws Error{
         gui.printerr("ERROR! File '" + file + "' is corrupt or unreadable.");
         gui.printerr("Please ensure the 'data' folder exists and has not been modified.");
         throw new Error();
     }
 
+    /**
+     * Warns that some items start in rooms that do not exist. The game can still be played,
+     * but those items can never be found.
+     * @param gui - the frontend to warn on.
+     * @param items - the items, each with the room it names.
+     */
+    public static void unknownStartingRooms(Frontend gui, List<String> items) {
+        gui.printerr("WARNING! These items start in rooms that do not exist: " + String.join(", ", items));
+        gui.printerr("Please ensure the 'data' folder has not been modified.");
+    }
+
     public static void crashGame() {
         throw new Error("Manual crash initiated.");
     }
@@ -0,0 +1,92 @@
+import java.util.SplittableRandom;
+
+/**
+ * The random number generator of one game session.
+ * <p>
+ * It uses SplitMix64, the algorithm behind {@code SplittableRandom}, but keeps its whole state in
+ * one field so the state can be saved. A session restored from a save or a journal checkpoint
+ * therefore draws exactly the numbers the original session would have, and a fight replays the
+ * same way every time. Each session has its own generator, so sessions never wait on a shared one
+ * the way {@code Math.random()} callers do.
+ */
+public class GameRandom implements java.io.Serializable, Cloneable {
+    private static final long serialVersionUID = 3928273248083604239L;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final long seed;
+    private long state;
+
+    /**
+     * Creates a generator that starts from {@code seed}. Two generators with the same seed draw
+     * the same numbers.
+     * @param seed - the seed.
+     */
+    public GameRandom(long seed) {
+        this.seed = seed;
+        this.state = seed;
+    }
+
+    /**
+     * Picks a seed for a new session.
+     * @return The seed.
+     */
+    public static long newSeed() {
+        return new SplittableRandom().nextLong();
+    }
+
+    /**
+     * Returns a copy of this generator that continues from the same point.
+     * @return The copy.
+     */
+    public GameRandom copy() {
+        try {
+            return (GameRandom) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Gets the seed the session was started with.
+     * @return The seed.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Draws a number from {@code 0} (inclusive) to {@code bound} (exclusive).
+     * @param bound - the upper bound, which must be positive.
+     * @return The number.
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0) throw new IllegalArgumentException("bound must be positive");
+        int r = mix32(nextSeed());
+        int m = bound - 1;
+        if ((bound & m) == 0) return r & m; // a power of two needs no rejection
+        // Reject the top few values so every number is equally likely, as SplittableRandom does.
+        for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = mix32(nextSeed()) >>> 1) {}
+        return r;
+    }
+
+    /**
+     * Draws a number from {@code origin} (inclusive) to {@code bound} (exclusive), or returns
+     * {@code origin} if the range is empty.
+     * @param origin - the lowest number.
+     * @param bound - one more than the highest number.
+     * @return The number.
+     */
+    public int nextInt(int origin, int bound) {
+        if (origin >= bound) return origin;
+        return origin + nextInt(bound - origin);
+    }
+
+    private long nextSeed() {
+        return state += GOLDEN_GAMMA;
+    }
+
+    private static int mix32(long z) {
+        z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+        return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+}
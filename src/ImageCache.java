@@ -0,0 +1,152 @@
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+
+/**
+ * Decodes the images printed in the output once and keeps them, so a room visited again shows
+ * its image straight away.
+ * <p>
+ * Images are decoded on a background thread, and scaled down to the width of the output if they
+ * are wider. {@code preload()} starts that work before the image is needed. The cache holds at
+ * most {@code maxBytes} of decoded pixels; past that, the least recently used images are dropped.
+ */
+public class ImageCache {
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    private final long maxBytes;
+    private final ExecutorService executor;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true); // least recently used first
+    private long bytes;
+
+    /**
+     * Creates an ImageCache.
+     * @param maxBytes - the most decoded pixel data to keep, in bytes.
+     */
+    public ImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Image Loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts decoding an image in the background, if it is not already cached.
+     * @param path - path of the image file.
+     * @param maxWidth - the width to scale the image down to if it is wider, or 0 for no limit.
+     */
+    public void preload(String path, int maxWidth) {
+        entry(path, maxWidth);
+    }
+
+    /**
+     * Gets an image, waiting for it to be decoded if it is not cached yet.
+     * @param path - path of the image file.
+     * @param maxWidth - the width to scale the image down to if it is wider, or 0 for no limit.
+     * @return The image.
+     * @throws FileNotFoundException If the image cannot be read.
+     */
+    public ImageIcon get(String path, int maxWidth) throws FileNotFoundException {
+        Entry entry = entry(path, maxWidth);
+        try {
+            return entry.icon.join();
+        } catch (CompletionException e) {
+            synchronized (this) {
+                if (entries.get(path) == entry) entries.remove(path); // let a fixed file be read next time
+            }
+            throw new FileNotFoundException(path);
+        }
+    }
+
+    /**
+     * Finds the cached entry for an image, or starts decoding it.
+     */
+    private synchronized Entry entry(String path, int maxWidth) {
+        Entry entry = entries.get(path);
+        if (entry != null && entry.fits(maxWidth)) return entry;
+        if (entry != null) forget(path, entry);
+
+        Entry created = new Entry(maxWidth);
+        entries.put(path, created);
+        created.icon = CompletableFuture.supplyAsync(() -> decode(path, created), executor);
+        created.icon.thenAccept(icon -> loaded(path, created, icon));
+        return created;
+    }
+
+    /** Runs on the loader thread once an image is decoded. Accounts for it and evicts old ones. */
+    private synchronized void loaded(String path, Entry entry, ImageIcon icon) {
+        if (entries.get(path) != entry) return; // replaced while it was decoding
+        entry.bytes = 4L * icon.getIconWidth() * icon.getIconHeight();
+        bytes += entry.bytes;
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Entry> oldest = it.next();
+            if (oldest.getValue() == entry) continue; // never evict the image just asked for
+            bytes -= oldest.getValue().bytes;
+            it.remove();
+        }
+    }
+
+    private void forget(String path, Entry entry) {
+        entries.remove(path);
+        bytes -= entry.bytes;
+    }
+
+    /** Runs on the loader thread. Reads an image and scales it down to the entry's width. */
+    private ImageIcon decode(String path, Entry entry) {
+        int maxWidth = entry.maxWidth;
+        BufferedImage image;
+        try {
+            image = ImageIO.read(new File(path));
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+        if (image == null) throw new CompletionException(new IOException("Not an image: " + path));
+        synchronized (this) {
+            entry.naturalWidth = image.getWidth();
+            entry.scaled = maxWidth > 0 && image.getWidth() > maxWidth;
+        }
+        if (!entry.scaled) return new ImageIcon(image);
+
+        int height = Math.max(1, image.getHeight() * maxWidth / image.getWidth());
+        BufferedImage scaled = new BufferedImage(maxWidth, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, maxWidth, height, null);
+        g.dispose();
+        return new ImageIcon(scaled);
+    }
+
+    /** A cached image, or one still being decoded. Guarded by the cache. */
+    private static class Entry {
+        private final int maxWidth;
+        private CompletableFuture<ImageIcon> icon;
+        private boolean scaled;
+        private int naturalWidth = -1; // unknown until decoded
+        private long bytes;
+
+        private Entry(int maxWidth) {
+            this.maxWidth = maxWidth;
+        }
+
+        /** Checks whether this entry can be shown in an output {@code width} pixels wide. */
+        private boolean fits(int width) {
+            if (width == maxWidth || naturalWidth < 0) return true;
+            if (scaled) return false; // scaled for another width
+            return width <= 0 || naturalWidth <= width;
+        }
+    }
+}
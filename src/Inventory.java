@@ -1,9 +1,11 @@
 import java.util.ArrayList;
 
-public class Inventory implements java.io.Serializable {
+public class Inventory implements java.io.Serializable, Cloneable {
+  private static final long serialVersionUID = -6119523410403346172L;
   private ArrayList<Item> items;
   private int maxWeight;
   private int currentWeight;
+  private int version;
 
   public Inventory(int maxWeight) {
     this.items = new ArrayList<Item>();
@@ -11,6 +13,22 @@ public class Inventory implements java.io.Serializable {
     this.currentWeight = 0;
   }
 
+  /**
+   * Returns a copy of this inventory with its own item list.
+   * The items themselves are shared; callers that need them copied can replace
+   * them through {@code getItems()}.
+   * @return The copy.
+   */
+  public Inventory copy() {
+    try {
+      Inventory copy = (Inventory) clone();
+      copy.items = new ArrayList<Item>(items);
+      return copy;
+    } catch (CloneNotSupportedException e) {
+      throw new AssertionError(e);
+    }
+  }
+
   /**
    * Gets a string of all the elements in the player's inventory. If there are none, it returns "Empty".
    * @return The {@code String} of the player's inventory.
@@ -24,6 +42,14 @@ public class Inventory implements java.io.Serializable {
     return String.join(", ", itemStrings);
   }
 
+  /**
+   * Returns a counter that goes up every time this object changes, so snapshots can tell
+   * whether an earlier copy of it is still up to date.
+   */
+  public int getVersion() {
+    return version;
+  }
+
   public int getMaxWeight() {
     return maxWeight;
   }
@@ -33,6 +59,7 @@ public class Inventory implements java.io.Serializable {
   }
 
   public boolean addItem(Item item) {
+    version++;
     if (item.getWeight() + currentWeight <= maxWeight){
       currentWeight += item.getWeight();
       return items.add(item);
@@ -48,8 +75,6 @@ public class Inventory implements java.io.Serializable {
    * @return The Item
    */
   public Item getItem(String name){
-    int i = items.indexOf(Game.itemMap.get(name));
-    if (i > -1) return items.get(i);
     for (Item invItem : items) {
       if (invItem.getName().equalsIgnoreCase(name)) return invItem;
       for (String alias : invItem.getAliases()) {
@@ -60,6 +85,7 @@ public class Inventory implements java.io.Serializable {
   }
 
   public boolean removeItem(Item item) {
+    version++;
     currentWeight -= item.getWeight();
     return items.remove(item);
   }
@@ -8,7 +8,8 @@ import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
-public class Item extends OpenableObject implements java.io.Serializable {
+public class Item extends OpenableObject implements java.io.Serializable, Cloneable {
+    private static final long serialVersionUID = 1998774801193148298L;
     private int weight;
     private String name;
     private String description;
@@ -19,8 +20,6 @@ public class Item extends OpenableObject implements java.io.Serializable {
     private int quantity;
     private ArrayList<String> aliases;
 
-    private transient GUI gui = GUI.getGUI();
-    public static ArrayList<String> validItems;
     private String startingRoom;
   
     public Item(int weight, String name, String startingRoom, boolean isTakeable, String description, ArrayList<String> aliases, boolean isDroppable, boolean isWeapon, int damage) { // FOR WEAPONS
@@ -84,24 +83,20 @@ public class Item extends OpenableObject implements java.io.Serializable {
       this.damage = item.damage;
     }
     
-    /** Set the list of valid items globally for the Item class. */
-    private static void setValidItems() {
-      validItems = new ArrayList<String>();
-      for (Object item : Item.getItems()) {
-        validItems.add(((String) ((JSONObject) item).get("name")).toLowerCase());
-        for (Object alias : (JSONArray) ((JSONObject) item).get("aliases")) {
-          validItems.add((String) alias);
-        }
+    /**
+     * Returns a shallow copy of this item, keeping its current state.
+     * Subclass fields are copied too, and immutable text is shared.
+     * @return The copy.
+     */
+    public Item copy() {
+      try {
+        return (Item) clone();
+      } catch (CloneNotSupportedException e) {
+        throw new AssertionError(e);
       }
     }
-    
-    public static boolean isValidItem(String item) {
-      if (validItems == null) setValidItems();
-      if (validItems.contains(item.toLowerCase())) return true;
-      return false;
-    }
 
-    public void open() {
+    public void open(Frontend gui) {
       if (!isTakeable)
         gui.println("The " + name + " cannot be opened.");
   
@@ -133,6 +128,7 @@ public class Item extends OpenableObject implements java.io.Serializable {
     }
   
     public void setWeight(int weight) {
+      changed();
       this.weight = weight;
     }
 
@@ -141,6 +137,7 @@ public class Item extends OpenableObject implements java.io.Serializable {
     }
 
     public void setDamage(int damage){
+      changed();
       this.damage = damage;
     }
 
@@ -152,10 +149,12 @@ public class Item extends OpenableObject implements java.io.Serializable {
     }
   
     public void setQuantity(int quantity) {
+      changed();
       this.quantity = quantity;
     }
 
     public void decrementQuantity() {
+      changed();
       this.quantity--;
     }
   
@@ -168,10 +167,12 @@ public class Item extends OpenableObject implements java.io.Serializable {
     }
   
     public void setName(String name) {
+      changed();
       this.name = name;
     }
   
     public void setDescription(String description) {
+      changed();
       this.description = description;
     }
   
@@ -180,6 +181,7 @@ public class Item extends OpenableObject implements java.io.Serializable {
     }
   
     public void setIsDroppable(boolean state) {
+      changed();
       this.isDroppable = state;
     }
   
@@ -197,6 +199,7 @@ public class Item extends OpenableObject implements java.io.Serializable {
      * @author Stefano
      */
     public void isTakeable(boolean state) {
+      changed();
       isTakeable = state;
     }
 
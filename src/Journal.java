@@ -0,0 +1,238 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A write-ahead journal of everything the player types, used to recover a session after a crash.
+ * <p>
+ * The journal is made of a checkpoint (a snapshot of the game state) and one or more log files
+ * holding the lines typed since then, one per line. Each checkpoint starts a new log generation,
+ * and older generations are deleted once the checkpoint is safely on disk. To recover, the
+ * checkpoint is loaded and every line in the logs from its generation onwards is replayed.
+ * <p>
+ * Appending only writes to a buffer. The buffer is flushed to disk in batches by a background
+ * thread, so a crash loses at most the last {@code FLUSH_INTERVAL_MS} of input.
+ */
+public class Journal {
+    private static final String CHECKPOINT_NAME = "Journal Checkpoint.ser";
+    private static final String LOG_PREFIX = "Journal ";
+    private static final String LOG_SUFFIX = ".log";
+    private static final long FLUSH_INTERVAL_MS = 200;
+
+    private final File directory;
+    private final File checkpointFile;
+    private final SaveWriter checkpointWriter;
+    private final ScheduledExecutorService flusher;
+    private BufferedWriter log;
+    private int generation;
+    private boolean dirty;
+
+    /**
+     * Creates a Journal that keeps its files in {@code directory}.
+     * @param directory - the directory, created if it does not exist.
+     */
+    public Journal(String directory) {
+        this.directory = new File(directory);
+        this.directory.mkdirs();
+        checkpointFile = new File(this.directory, CHECKPOINT_NAME);
+        checkpointWriter = new SaveWriter(checkpointFile.getPath(), true);
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Journal Flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Checks whether a previous session ended without closing its journal.
+     * @return True if there is a session to recover.
+     */
+    public boolean hasUncleanSession() {
+        return checkpointFile.isFile();
+    }
+
+    /**
+     * Loads the checkpoint left by the previous session and the lines typed after it, and
+     * continues journaling into the newest log.
+     * @param replay - receives the lines to replay, oldest first.
+     * @return The checkpoint, or {@code null} if it could not be read.
+     */
+    public synchronized Checkpoint recover(ArrayDeque<String> replay) {
+        Checkpoint checkpoint;
+        try {
+            checkpoint = (Checkpoint) SaveWriter.read(checkpointFile.getPath());
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            return null;
+        }
+        generation = checkpoint.generation;
+        for (int gen : generations()) {
+            if (gen < checkpoint.generation) continue;
+            try (BufferedReader reader = Files.newBufferedReader(logPath(gen), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    replay.add(line);
+                }
+            } catch (IOException e) {
+                break; // a damaged log ends the replay; everything before it is still good
+            }
+            generation = gen;
+        }
+        openLog();
+        return checkpoint;
+    }
+
+    /**
+     * Starts a new journal for a fresh session, discarding anything left by an older one.
+     * Waits for the first checkpoint to be written, so a crash straight after starting can
+     * still be recovered.
+     * @param save - the state the session starts from.
+     * @param history - the undo history at that point.
+     */
+    public synchronized void start(Save save, UndoHistory history) {
+        closeLog();
+        for (int gen : generations()) {
+            logPath(gen).toFile().delete();
+        }
+        generation = 0;
+        checkpoint(save, history);
+        checkpointWriter.flush();
+    }
+
+    /**
+     * Records a new checkpoint. Lines appended afterwards go to a new log generation, and older
+     * generations are deleted once the checkpoint has been written.
+     * <p>
+     * The undo history is saved with the state, so a recovered session can undo commands from
+     * before the checkpoint exactly as the crashed one could.
+     * @param save - a snapshot of the current game state, taken between commands.
+     * @param history - the undo history at that point.
+     */
+    public synchronized void checkpoint(Save save, UndoHistory history) {
+        closeLog();
+        generation++;
+        openLog();
+        final int current = generation;
+        checkpointWriter.write(new Checkpoint(save, history.copy(), current)).thenRun(() -> deleteGenerationsBefore(current));
+    }
+
+    /**
+     * Appends a line of player input to the journal.
+     * @param line - the line exactly as it was typed.
+     */
+    public synchronized void append(String line) {
+        if (log == null) return;
+        try {
+            log.write(line);
+            log.newLine();
+            dirty = true;
+        } catch (IOException e) {
+            closeLog();
+        }
+    }
+
+    /** Writes any buffered lines to disk. Called periodically by the flusher thread. */
+    public synchronized void flush() {
+        if (!dirty || log == null) return;
+        try {
+            log.flush();
+            dirty = false;
+        } catch (IOException e) {
+            closeLog();
+        }
+    }
+
+    /**
+     * Closes the journal after the game has ended normally, deleting it since there is nothing
+     * left to recover.
+     */
+    public synchronized void close() {
+        flusher.shutdown();
+        closeLog();
+        checkpointWriter.close();
+        checkpointFile.delete();
+        for (int gen : generations()) {
+            logPath(gen).toFile().delete();
+        }
+    }
+
+    private void openLog() {
+        try {
+            log = Files.newBufferedWriter(logPath(generation), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            log = null;
+        }
+    }
+
+    private void closeLog() {
+        if (log == null) return;
+        try {
+            log.close();
+        } catch (IOException e) {
+        }
+        log = null;
+        dirty = false;
+    }
+
+    private void deleteGenerationsBefore(int gen) {
+        for (int old : generations()) {
+            if (old < gen) logPath(old).toFile().delete();
+        }
+    }
+
+    /** Lists the generations that have a log file, in ascending order. */
+    private ArrayList<Integer> generations() {
+        ArrayList<Integer> gens = new ArrayList<Integer>();
+        String[] names = directory.list();
+        if (names == null) return gens;
+        for (String name : names) {
+            if (!name.startsWith(LOG_PREFIX) || !name.endsWith(LOG_SUFFIX)) continue;
+            try {
+                gens.add(Integer.parseInt(name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length())));
+            } catch (NumberFormatException e) {
+            }
+        }
+        Collections.sort(gens);
+        return gens;
+    }
+
+    private Path logPath(int gen) {
+        return new File(directory, LOG_PREFIX + gen + LOG_SUFFIX).toPath();
+    }
+
+    /** The state written to the checkpoint file. */
+    public static class Checkpoint implements java.io.Serializable {
+        private final Save save;
+        private final UndoHistory history;
+        private final int generation;
+
+        private Checkpoint(Save save, UndoHistory history, int generation) {
+            this.save = save;
+            this.history = history;
+            this.generation = generation;
+        }
+
+        public Save getSave() {
+            return save;
+        }
+
+        /**
+         * Gets the undo history at the checkpoint.
+         * @return The history, or {@code null} for a checkpoint written before it was saved.
+         */
+        public UndoHistory getHistory() {
+            return history;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 import java.util.ArrayList;
 
 public class Key extends Item {
+  private static final long serialVersionUID = -7412769872448867975L;
   private String keyId;
 
   public Key(String keyId, String keyName, String startingRoom, int weight, String description, ArrayList<String> aliases) {
@@ -1,77 +1,234 @@
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
-import javax.sound.sampled.FloatControl;
-import javax.sound.sampled.LineUnavailableException;
-import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 
 
 /**
  * A simple music player that accepts AIFC, AIFF, AU, SND and WAVE input formats.
+ * <p>
+ * A player is one track heard through an {@code AudioMixer}, which reads it a small buffer at a
+ * time on its audio thread and applies the player's volume there. The track comes from the mixer's
+ * cache, so a player starts without reading the file again. A looping track starts over as soon
+ * as its end is read, so the loop has no gap.
+ * <p>
+ * The volume can also be faded over a set time. A fade is an envelope: the volume at any moment is
+ * worked out from the clock, and the mixer applies it to each sample as it mixes, so starting a
+ * fade returns straight away. This is how the game crossfades from one track to the next: the old
+ * player fades out while the new one fades in, both on the same line. When a fade ends, its
+ * callback is run on a scheduler thread shared by every player, whether or not there is an audio
+ * device to hear it on.
  * @author Stefano
  */
 public class MusicPlayer {
-    private AudioInputStream audioInput;
-    private Clip clip;
+    private static final double SILENT = -80; // decibels, and anything quieter is not heard at all
+    private static final ScheduledExecutorService FADES = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Music Fades");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AudioMixer mixer;
+    private final boolean loopsForever;
+    private final CompletableFuture<AudioCache.Track> track;
+    private final byte[] buffer = new byte[AudioMixer.CHUNK_FRAMES * AudioMixer.FORMAT.getFrameSize()]; // only used on the audio thread
+    private InputStream in; // only used on the audio thread
+    private double volume; // in decibels, or where a fade is heading; guarded by this
+    private double fadeFrom; // in decibels, guarded by this
+    private long fadeStart; // System.nanoTime() when the fade started, guarded by this
+    private long fadeNanos; // how long the fade lasts, or 0 when not fading; guarded by this
+    private int fades; // counts the fades started, so an old fade's callback is not run; guarded by this
+    private boolean playing; // guarded by this
+    private boolean closed; // guarded by this
 
     /**
      * Instantiates a new MusicPlayer with an input file specified by {@code filePath}.
      * <p>
      * It unobtrusively logs errors to {@code System.err} except for the FileNotFound exception.
+     * @param mixer - the mixer the music is heard through.
      * @param filePath - path to playable music file
+     * @param loopsForever - whether to start playing straight away and loop until stopped, rather
+     * than waiting for {@code play()} and playing once.
      */
-    public MusicPlayer(String filePath, boolean loopsForever) throws FileNotFoundException{
-        try {
-            audioInput = AudioSystem.getAudioInputStream(new File(filePath));
-            clip = AudioSystem.getClip();
-            clip.open(audioInput);
-            if (loopsForever) clip.loop(Clip.LOOP_CONTINUOUSLY);
-        } catch (FileNotFoundException e){
-            throw new FileNotFoundException(filePath);
-        } catch (IOException | LineUnavailableException e) {
-            System.err.println("ERROR: Audio not playing!");
-            e.printStackTrace();
-        } catch (UnsupportedAudioFileException e) {
-            System.err.println("ERROR: Audio file not supported!");
-            e.printStackTrace();
-        }
-        //TODO: keep thread alive to let music loop
+    public MusicPlayer(AudioMixer mixer, String filePath, boolean loopsForever) throws FileNotFoundException{
+        if (!new File(filePath).isFile()) throw new FileNotFoundException(filePath);
+        this.mixer = mixer;
+        this.loopsForever = loopsForever;
+        this.track = mixer.track(filePath);
+        this.playing = loopsForever;
+        mixer.add(this);
+        track.whenComplete((t, e) -> mixer.wake()); // it can be heard now, or removed if it failed
     }
-    
 
-    /**Starts the music. */
+    /**Starts the music, from where it was stopped. */
     public void play() {
-        clip.start();
+        synchronized (this) {
+            if (closed) return;
+            playing = true;
+        }
+        mixer.wake();
     }
 
     /**Stops the music. */
-    public void stop() {
-        clip.stop();
+    public synchronized void stop() {
+        playing = false;
     }
-    
+
+    /**Stops the music for good. */
+    public synchronized void close() {
+        closed = true;
+        playing = false;
+    }
+
     /**
-     * Sets the current music volume, in decibels, between 0 and -80 dB.
+     * Sets the current music volume, in decibels, between 0 and -80 dB. Stops any fade.
      * @param vol - A {@code float} of the new volume.
      */
-    public void setVolume(double vol){
+    public synchronized void setVolume(double vol){
         if (vol > 0 || vol < -80.0f) throw new IllegalArgumentException("Value must be between 0 and -80");
-        FloatControl volume = (FloatControl) clip.getControl(FloatControl.Type.MASTER_GAIN);
-        // vol = (float) Math.log10(vol) * 20;
-        volume.setValue((float) vol);
-
+        volume = vol;
+        fadeNanos = 0;
+        fades++;
     }
 
     /**
-     * Gets the current music volume, in decibels, between 0 and -80 dB.
+     * Gets the current music volume, in decibels, between 0 and -80 dB. During a fade, this is
+     * the volume being faded to.
      * @return A {@code float} of the current volume.
      */
-    public double getVolume() {
-        FloatControl volume = (FloatControl) clip.getControl(FloatControl.Type.MASTER_GAIN);
-        // return (float) Math.pow(10, volume.getValue() / 20);
-        return (double) volume.getValue();
+    public synchronized double getVolume() {
+        return volume;
+    }
+
+    /**
+     * Fades the volume from where it is now to {@code vol}, over {@code millis} milliseconds.
+     * Returns straight away; the fade is applied by the mixer as the music plays.
+     * <p>
+     * {@code then} is run once the fade ends, on the fade scheduler, or straight away if
+     * {@code millis} is 0. It is not run if the fade is cut short by {@code setVolume()} or another
+     * fade.
+     * @param vol - the volume to fade to, in decibels, between 0 and -80 dB.
+     * @param millis - how long the fade takes.
+     * @param then - what to do once the fade ends, or {@code null}.
+     */
+    public void fadeTo(double vol, long millis, Runnable then) {
+        if (vol > 0 || vol < -80.0f) throw new IllegalArgumentException("Value must be between 0 and -80");
+        int fade;
+        synchronized (this) {
+            long now = System.nanoTime();
+            fadeFrom = level(now);
+            volume = vol;
+            fadeStart = now;
+            fadeNanos = Math.max(0, millis) * 1000000;
+            fade = ++fades;
+        }
+        if (then == null) return;
+        if (millis <= 0) then.run();
+        else FADES.schedule(() -> finishFade(fade, then), millis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Runs on the fade scheduler. Runs a fade's callback, unless another fade has replaced it. */
+    private void finishFade(int fade, Runnable then) {
+        synchronized (this) {
+            if (fade != fades) return;
+        }
+        then.run();
+    }
+
+    /** Checks whether the mixer should mix this player. Called by the mixer. */
+    synchronized boolean isAudible() {
+        return playing && !closed;
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Runs on the audio thread. Adds the next {@code frames} frames of the music, at its volume,
+     * to {@code sum}.
+     * @return False once the music has ended or the player is closed.
+     */
+    boolean mixInto(int[] sum, int frames) {
+        if (!track.isDone()) return true; // not decoded yet, so nothing is heard for now
+        double startGain;
+        double endGain;
+        synchronized (this) {
+            if (closed) return false;
+            long now = System.nanoTime();
+            startGain = gain(level(now));
+            endGain = gain(level(now + (long) (frames * 1e9 / AudioMixer.FORMAT.getFrameRate())));
+        }
+
+        int read = read(frames * 4);
+        if (read < 0) return false;
+        int length = read / 2;
+        for (int i = 0; i < length; i++) {
+            int frame = i / 2;
+            double gain = startGain + (endGain - startGain) * frame / frames;
+            int sample = (short) ((buffer[2 * i] & 0xff) | (buffer[2 * i + 1] << 8));
+            sum[i] += (int) Math.round(sample * gain);
+        }
+
+        synchronized (this) {
+            if (read < frames * 4) close(); // the end of a track that does not loop
+            return !closed;
+        }
+    }
+
+    /**
+     * Runs on the audio thread. Reads up to {@code length} bytes of the track into the buffer,
+     * starting it over at its end if it loops.
+     * @return The bytes read, or -1 if the track could not be read.
+     */
+    private int read(int length) {
+        try {
+            if (in == null) in = track.join().open();
+            int read = in.readNBytes(buffer, 0, length);
+            while (read < length && loopsForever) {
+                in.close();
+                in = track.join().open();
+                int more = in.readNBytes(buffer, read, length - read);
+                if (more == 0) break; // an empty track
+                read += more;
+            }
+            return read;
+        } catch (IOException | CompletionException e) {
+            System.err.println("ERROR: Audio not playing!");
+            e.printStackTrace();
+            close();
+            return -1;
+        }
+    }
+
+    /** Runs on the audio thread, once the mixer has removed the player. Closes the track. */
+    void release() {
+        if (in == null) return;
+        try {
+            in.close();
+        } catch (IOException e) {
+        }
+        in = null;
+    }
+
+    /**
+     * The volume heard at a time, in decibels, part way through any fade. Caller holds the lock.
+     * @param time - a time from {@code System.nanoTime()}.
+     */
+    private double level(long time) {
+        long elapsed = time - fadeStart;
+        if (fadeNanos == 0 || elapsed >= fadeNanos) return volume;
+        if (elapsed <= 0) return fadeFrom;
+        return fadeFrom + (volume - fadeFrom) * elapsed / fadeNanos;
+    }
+
+    private static double gain(double vol) {
+        return vol <= SILENT ? 0 : Math.pow(10, vol / 20);
     }
 }
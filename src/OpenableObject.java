@@ -2,6 +2,7 @@ public class OpenableObject {
   private Boolean isLocked;
   private String keyId;
   private Boolean isOpen;
+  private int version;
 
   public OpenableObject() {
     this.isLocked = false;
@@ -21,11 +22,25 @@ public class OpenableObject {
     this.isOpen = false;
   }
 
+  /**
+   * Returns a counter that goes up every time this object changes, so snapshots can tell
+   * whether an earlier copy of it is still up to date.
+   */
+  public int getVersion() {
+    return version;
+  }
+
+  /** Marks this object as changed. Subclasses call this from their setters. */
+  protected void changed() {
+    version++;
+  }
+
   public boolean isLocked() {
     return isLocked;
   }
 
   public void setLocked(boolean isLocked) {
+    version++;
     this.isLocked = isLocked;
   }
 
@@ -38,6 +53,7 @@ public class OpenableObject {
   }
 
   public void setOpen(boolean isOpen) {
+    version++;
     this.isOpen = isOpen;
   }
 }
@@ -1,12 +1,27 @@
 import java.util.ArrayList;
 
 public class Parser {
-  private static final String validCommands[] = { "go", "quit", "help", "eat", "yell", "music", "restart", "hit", "save", "take", "heal", "test", "wear", "read", "pray", "inflate", "info", "cls", "drop", "threaten" };
-  private static GUI gui = GUI.getGUI();
+  private static final String validCommands[] = { "go", "quit", "help", "eat", "yell", "music", "restart", "hit", "save", "take", "heal", "test", "wear", "read", "pray", "inflate", "info", "cls", "drop", "threaten", "undo", "rewind" };
+  private final Frontend gui;
+
+  /**
+   * Creates a Parser that reads commands from, and prints help to, a frontend.
+   * @param gui - the frontend.
+   */
+  public Parser(Frontend gui) {
+    this.gui = gui;
+  }
 
   public Command getCommand() {
-    GUI gui = GUI.getGUI();
-    String inputLine = gui.readCommand();
+    return getCommand(gui.readCommand());
+  }
+
+  /**
+   * Parses a line of input into a Command.
+   * @param inputLine - the line typed by the player.
+   * @return The Command.
+   */
+  public Command getCommand(String inputLine) {
     String[] words;
     ArrayList<String> args = new ArrayList<String>();
 
@@ -46,8 +61,7 @@ public class Parser {
   /**
    * Print out a list of valid command words.
    */
-  public static void showCommands() {
-    GUI gui = GUI.getGUI();
+  public void showCommands() {
     for (int i = 0; i < validCommands.length - 1; i++) {
       gui.print(validCommands[i] + ", ");
     }
@@ -59,7 +73,7 @@ public class Parser {
    * Prints help for each specific command.
    * @param command
    */
-  public static void printCommandHelp(Command command) {
+  public void printCommandHelp(Command command) {
     String commandWord = command.getFirstArg();
      if (!cmdValid(command, 0)){
       gui.println("\"" + command.getFirstArg() + "\" is not a valid command!");
@@ -113,12 +127,14 @@ public class Parser {
     } else if (commandWord.equalsIgnoreCase("save")){
       gui.println("Saves the game or loads from a previously saved state.");
       gui.println();
-      gui.println("SAVE <quit | game | load | clear>");
+      gui.println("SAVE <quit | game | load | clear | list> [name]");
       gui.println();
       gui.println("  quit      Saves the game and quits.");
       gui.println("  game      Saves the game without quitting.");
       gui.println("  load      Loads the game from a previously saved state.");
       gui.println("  clear     Clears the saved state of the game.");
+      gui.println("  list      Lists the saved games.");
+      gui.println("  name      The name of the save to use. Defaults to \"default\".");
     } else if (commandWord.equalsIgnoreCase("help")){
       gui.println("Prints help about the commands that can be used in the game.");
       gui.println();
@@ -178,6 +194,16 @@ public class Parser {
       gui.println("DROP item");
       gui.println();
       gui.println("  item     The item to drop.");
+    } else if (commandWord.equalsIgnoreCase("undo")){
+      gui.println("Takes back your last commands.");
+      gui.println();
+      gui.println("UNDO [steps]");
+      gui.println();
+      gui.println("  steps     How many commands to take back. Defaults to 1.");
+    } else if (commandWord.equalsIgnoreCase("rewind")){
+      gui.println("Takes back every command since the game was started, restarted or loaded.");
+      gui.println();
+      gui.println("REWIND");
     } else if (commandWord.equalsIgnoreCase("test")){
       gui.println("Internal function for testing the game. Do not use.");
     }
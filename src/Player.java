@@ -1,8 +1,10 @@
-public class Player implements java.io.Serializable{
+public class Player implements java.io.Serializable, Cloneable {
+    private static final long serialVersionUID = -7453768271736095836L;
     private int health;
     private boolean talkedToSkyGods;
     private boolean hasReadTome;
     private boolean[] trials;
+    private int version;
 
     public Player(int health){
         this.health = health;
@@ -11,7 +13,30 @@ public class Player implements java.io.Serializable{
         hasReadTome = false;
     }
 
+    /**
+     * Returns a copy of this player, including its trial progress.
+     * @return The copy.
+     */
+    public Player copy(){
+        try {
+            Player copy = (Player) clone();
+            copy.trials = trials.clone();
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Returns a counter that goes up every time this object changes, so snapshots can tell
+     * whether an earlier copy of it is still up to date.
+     */
+    public int getVersion() {
+      return version;
+    }
+
     public boolean setDamage(int damage){
+        version++;
         health -= damage;
         if (health <= 0){
             health = 0;
@@ -21,10 +46,12 @@ public class Player implements java.io.Serializable{
     }
 
     public void setHealth(int health){
+        version++;
         this.health = health;
     }
 
     public void maxHeal(){
+        version++;
         health = 100;
     }
 
@@ -37,6 +64,7 @@ public class Player implements java.io.Serializable{
      * @author Samantha
      */
     public void talkedToSkyGods(){
+        version++;
         talkedToSkyGods = true;
     }
 
@@ -49,6 +77,7 @@ public class Player implements java.io.Serializable{
     }
 
     public void setHasReadTome(boolean state){
+        version++;
         hasReadTome = state;
     }
 
@@ -57,13 +86,26 @@ public class Player implements java.io.Serializable{
     }
 
     public void setTrial(int index){
+        version++;
         trials[index] = true;
     }
 
     public void resetTrials(){
+        version++;
         trials = new boolean[11];
     }
 
+    /**
+     * Counts how many of the eight trials in the Tome of Tableland have been completed.
+     */
+    public int getTrialsCompleted(){
+        int count = 0;
+        for (int i = 0; i < 8; i++){
+            if (trials[i]) count++;
+        }
+        return count;
+    }
+
     /**
      * This checks if the player has completed the eight trials that let it talk to the sky gods.
      * @author Samantha
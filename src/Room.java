@@ -2,17 +2,28 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
-public class Room implements java.io.Serializable {
+public class Room implements java.io.Serializable, Cloneable {
+  private static final long serialVersionUID = -5906620575909766424L;
   private String roomName;
   private String description;
   private ArrayList<Exit> exits;
   private ArrayList<Item> items;
+  private int version;
+  private transient String shortText; // rendered descriptions, see render()
+  private transient String longText;
+  private transient String exitText;
+  private transient String exitList;
+  private transient String renderedName; // what they were rendered from
+  private transient String renderedDescription;
+  private transient ArrayList<Exit> renderedExits;
+  private transient int renderedExitsStamp;
 
   public Room() {
     roomName = "DEFAULT ROOM";
@@ -21,17 +32,33 @@ public class Room implements java.io.Serializable {
   }
   
   /**
-   * Initializes the items for the current room.
+   * Returns a copy of this room with its own exits and item list.
+   * The items themselves are shared; callers that need them copied can replace
+   * them through {@code getItems()}.
+   * @return The copy.
    */
-  public void initItems() {
-    items = new ArrayList<Item>();
-    for (String itemName : Game.itemMap.keySet()) {
-      if (Game.itemMap.get(itemName).getStartingRoom().equals(roomName) && !items.contains(Game.itemMap.get(itemName))){
-        items.add(Game.itemMap.get(itemName));
+  public Room copy() {
+    try {
+      Room copy = (Room) clone();
+      copy.exits = new ArrayList<Exit>(exits.size());
+      for (Exit exit : exits) {
+        copy.exits.add(exit.copy());
       }
+      if (items != null) copy.items = new ArrayList<Item>(items);
+      return copy;
+    } catch (CloneNotSupportedException e) {
+      throw new AssertionError(e);
     }
   }
 
+  /**
+   * Returns a counter that goes up every time this object changes, so snapshots can tell
+   * whether an earlier copy of it is still up to date.
+   */
+  public int getVersion() {
+    return version;
+  }
+
   public boolean containsItem(String item) {
     for (Item itemObj : items) {
       if (itemObj.getName().equalsIgnoreCase(item)) return true;
@@ -48,6 +75,7 @@ public class Room implements java.io.Serializable {
   }
 
   public void setExits(ArrayList<Exit> exits) {
+    version++;
     this.exits = exits;
   }
 
@@ -56,7 +84,8 @@ public class Room implements java.io.Serializable {
    * constructor).
    */
   public String shortDescription() {
-    return "Room: " + roomName + "\n\n" + description;
+    render();
+    return shortText;
   }
 
   /**
@@ -64,7 +93,8 @@ public class Room implements java.io.Serializable {
    * Exits: north west
    */
   public String longDescription() {
-    return "Room: " + roomName + "\n\n" + description + "\n" + exitString();
+    render();
+    return longText;
   }
 
   /**
@@ -72,11 +102,48 @@ public class Room implements java.io.Serializable {
    * ".
    */
   public String exitString() {
-    ArrayList<String> exitStrings = new ArrayList<String>();
+    render();
+    return exitText;
+  }
+
+  /**
+   * Returns the room's exit directions, separated by commas.
+   */
+  public String exitList() {
+    render();
+    return exitList;
+  }
+
+  /**
+   * Builds the room's descriptions once, and again only after its name, description or exits
+   * have changed, so moving between rooms prints text that is already built. Taking or dropping
+   * an item does not show in them, so it does not rebuild them.
+   */
+  private void render() {
+    int exitsStamp = exitsStamp();
+    if (longText != null && renderedName == roomName && renderedDescription == description
+        && renderedExits == exits && renderedExitsStamp == exitsStamp) return;
+    ArrayList<String> directions = new ArrayList<String>(exits.size());
     for (Exit exit : exits) {
-        exitStrings.add(exit.getDirection());
+      directions.add(exit.getDirection());
     }
-    return "Exits: " + String.join(", ", exitStrings);
+    exitList = String.join(", ", directions);
+    exitText = "Exits: " + exitList;
+    shortText = "Room: " + roomName + "\n\n" + description;
+    longText = shortText + "\n" + exitText;
+    renderedName = roomName;
+    renderedDescription = description;
+    renderedExits = exits;
+    renderedExitsStamp = exitsStamp;
+  }
+
+  /** Combines the exits' change counters, so adding, removing or changing an exit changes it. */
+  private int exitsStamp() {
+    int stamp = exits.size();
+    for (Exit exit : exits) {
+      stamp = stamp * 31 + exit.getVersion();
+    }
+    return stamp;
   }
 
   /**
@@ -84,13 +151,10 @@ public class Room implements java.io.Serializable {
    * @param direction - The direction to go.
    * @throws IllegalArgumentException if the direction is not valid.
    */
-  public boolean canGoDirection(String direction, Inventory inventory, Player player) {
+  public boolean canGoDirection(String direction, Player player) {
     if ((roomName.equals("West of the Cyan House") || roomName.equals("East of the Cyan House") || roomName.equals("North of the Cyan House")) && player.getHasReadTome()){
         return true;
     }    
-    if (roomName.equals("Shadowed Plains") && inventory.hasItem(Game.itemMap.get("balloony"))){
-        Game.printBalloonHelp();
-    }
     if (roomName.equals("Mysterious Entrance") && player.getTalkedToSkyGods()){
       return true;
     }
@@ -106,13 +170,15 @@ public class Room implements java.io.Serializable {
   /**
    * Return the room that is reached if we go from this room in direction
    * "direction". If there is no room in that direction, return null.
+   * @param direction - The direction to go.
+   * @param rooms - The game's rooms, by name.
    */
-  public Room nextRoom(String direction){
+  public Room nextRoom(String direction, HashMap<String, Room> rooms){
     for (Exit exit : exits) {
       if (exit.getDirection().equalsIgnoreCase(direction)) {
         String adjacentRoom = exit.getAdjacentRoom();
 
-        return Game.roomMap.get(adjacentRoom);
+        return rooms.get(adjacentRoom);
       }
     }
     return null;
@@ -153,6 +219,7 @@ public class Room implements java.io.Serializable {
   }
 
   public void setItems(ArrayList<Item> items){
+    version++;
     this.items = items;
   }
 
@@ -161,6 +228,7 @@ public class Room implements java.io.Serializable {
   }
 
   public void setRoomName(String roomName) {
+    version++;
     this.roomName = roomName;
   }
 
@@ -169,6 +237,7 @@ public class Room implements java.io.Serializable {
   }
 
   public void setDescription(String description) {
+    version++;
     this.description = description;
   }
 
@@ -178,6 +247,7 @@ public class Room implements java.io.Serializable {
    * @throws IllegalArgumentException if the item is not found in the room.
    */
   public void removeItem(String itemName) {
+    version++;
     for (int i = 0; i < items.size(); i++) {
       if (items.get(i).getName().equalsIgnoreCase(itemName)){
         items.remove(i);
@@ -194,6 +264,7 @@ public class Room implements java.io.Serializable {
   }
 
   public boolean addItem(Item item) {
+    version++;
     return items.add(item);
   }
 }
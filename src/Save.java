@@ -1,7 +1,13 @@
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
 
 public class Save implements java.io.Serializable {
+    private static final long serialVersionUID = 1580638306242437483L; // kept from the first release, so its saves can still be read
     private HashMap<String, Room> roomMap;
+    private HashMap<String, Item> itemMap;
     private HashMap<String, Enemy> enemyMap;
     private Inventory inventory;
     private Room currentRoom;
@@ -13,9 +19,11 @@ public class Save implements java.io.Serializable {
     private boolean hasOpenedVault;
     private boolean supportCheck;
     private int trial;
+    private GameRandom random;
 
-    public Save(HashMap<String, Room> roomMap, Inventory inventory, Room currentRoom, Room pastRoom, Player player, HashMap<String, Enemy> enemyMap, String music, boolean isInTrial, boolean hasAnsweredNewsQuestions, boolean hasOpenedVault, boolean supportCheck, int trial){
+    public Save(HashMap<String, Room> roomMap, HashMap<String, Item> itemMap, Inventory inventory, Room currentRoom, Room pastRoom, Player player, HashMap<String, Enemy> enemyMap, String music, boolean isInTrial, boolean hasAnsweredNewsQuestions, boolean hasOpenedVault, boolean supportCheck, int trial, GameRandom random){
         this.roomMap = roomMap;
+        this.itemMap = itemMap;
         this.inventory = inventory;
         this.currentRoom = currentRoom;
         this.pastRoom = pastRoom;
@@ -27,6 +35,204 @@ public class Save implements java.io.Serializable {
         this.hasOpenedVault = hasOpenedVault;
         this.supportCheck = supportCheck;
         this.trial = trial;
+        this.random = random;
+    }
+
+    /**
+     * Takes a consistent snapshot of the given game state.
+     * <p>
+     * Every mutable object is copied, so the snapshot is not affected by anything the game does
+     * afterwards and can be encoded on another thread. Objects reachable from several places
+     * (such as the current room, or an item that is also in {@code itemMap}) are copied once, so
+     * the snapshot keeps the same shape as the live game.
+     * <p>
+     * With a cache, every object is still visited to compare its version counters with the
+     * cached copy's, but only the objects that changed are copied, and a map, room or inventory
+     * whose contents are all unchanged is shared rather than rebuilt.
+     * @param random - the session's random number generator, saved so fights replay the same way.
+     * @param cache - copies made by earlier snapshots that can be shared if their object has not
+     * changed since, or {@code null} to copy everything.
+     * @return The snapshot.
+     */
+    public static Save snapshot(HashMap<String, Room> roomMap, HashMap<String, Item> itemMap, Inventory inventory, Room currentRoom, Room pastRoom, Player player, HashMap<String, Enemy> enemyMap, String music, boolean isInTrial, boolean hasAnsweredNewsQuestions, boolean hasOpenedVault, boolean supportCheck, int trial, GameRandom random, SnapshotCache cache){
+        return copy(roomMap, itemMap, inventory, currentRoom, pastRoom, player, enemyMap, music, isInTrial, hasAnsweredNewsQuestions, hasOpenedVault, supportCheck, trial, random, new Copier(cache == null ? new SnapshotCache() : cache, false));
+    }
+
+    private static Save copy(HashMap<String, Room> roomMap, HashMap<String, Item> itemMap, Inventory inventory, Room currentRoom, Room pastRoom, Player player, HashMap<String, Enemy> enemyMap, String music, boolean isInTrial, boolean hasAnsweredNewsQuestions, boolean hasOpenedVault, boolean supportCheck, int trial, GameRandom random, Copier copier){
+        HashMap<String, Room> rooms = copier.map(roomMap, copier::room);
+        HashMap<String, Item> items = copier.map(itemMap, copier::item);
+        HashMap<String, Enemy> enemies = copier.map(enemyMap, copier::enemy);
+        return new Save(rooms, items, copier.inventory(inventory), copier.room(currentRoom), copier.room(pastRoom), copier.player(player), enemies, music, isInTrial, hasAnsweredNewsQuestions, hasOpenedVault, supportCheck, trial, random == null ? null : random.copy());
+    }
+
+    /**
+     * Returns a copy of this save that the game can modify freely, leaving this one untouched.
+     * @return The copy.
+     */
+    public Save copy() {
+        return snapshot(roomMap, itemMap, inventory, currentRoom, pastRoom, player, enemyMap, music, isInTrial, hasAnsweredNewsQuestions, hasOpenedVault, supportCheck, trial, random, null);
+    }
+
+    /**
+     * Returns a copy of this save for the game to play on, and records in {@code cache} that
+     * this save already holds each copied object's state. A snapshot taken through the cache
+     * afterwards then shares this save's objects for everything the game has not changed.
+     * @param cache - the cache the following snapshots will be taken with. It is cleared first.
+     * @return The copy.
+     */
+    public Save copy(SnapshotCache cache) {
+        cache.clear();
+        return copy(roomMap, itemMap, inventory, currentRoom, pastRoom, player, enemyMap, music, isInTrial, hasAnsweredNewsQuestions, hasOpenedVault, supportCheck, trial, random, new Copier(cache, true));
+    }
+
+    /**
+     * Copies the objects of one snapshot, sharing unchanged copies from earlier snapshots
+     * through a {@code SnapshotCache}.
+     */
+    private static class Copier {
+        private final Map<Object, Object> copies; // only when copying back; otherwise the cache finds this snapshot's copies
+        private final SnapshotCache cache;
+        private final boolean reverse; // copying a snapshot back to play on, see copy(SnapshotCache)
+
+        private Copier(SnapshotCache cache, boolean reverse) {
+            this.cache = cache;
+            this.reverse = reverse;
+            this.copies = reverse ? new IdentityHashMap<Object, Object>() : null;
+        }
+
+        /** Gets the copy of {@code live} already made by this copier, when copying back. */
+        private Object copied(Object live) {
+            return reverse ? copies.get(live) : null;
+        }
+
+        /** Records the copy of {@code live} made by this copier, when copying back. */
+        private void copied(Object live, Object copy) {
+            if (reverse) copies.put(live, copy);
+        }
+
+        /** Looks up an earlier copy of {@code live}, unless copying a snapshot back. */
+        private Object cached(Object live, long stamp) {
+            return reverse ? null : cache.get(live, stamp);
+        }
+
+        /** Records a copy; when copying back, the original is the copy of the new object. */
+        private void remember(Object original, long stamp, Object copy) {
+            if (reverse) cache.put(copy, stamp, original);
+            else cache.put(original, stamp, copy);
+        }
+
+        /**
+         * Copies a map of live objects, or shares the previous snapshot's copy of it if every
+         * entry's copy is the same as before.
+         */
+        private <V> HashMap<String, V> map(HashMap<String, V> live, UnaryOperator<V> copyOf) {
+            if (live == null) return null;
+            @SuppressWarnings("unchecked")
+            HashMap<String, V> copy = (HashMap<String, V>) cached(live, live.size());
+            for (Map.Entry<String, V> entry : live.entrySet()) {
+                V value = copyOf.apply(entry.getValue());
+                if (copy != null && copy.get(entry.getKey()) != value) copy = null; // same size, so only the entries can differ
+            }
+            if (copy != null) return copy;
+            copy = new HashMap<String, V>(live.size() * 4 / 3 + 1);
+            for (Map.Entry<String, V> entry : live.entrySet()) {
+                copy.put(entry.getKey(), copyOf.apply(entry.getValue())); // already copied above, so only looked up
+            }
+            remember(live, live.size(), copy);
+            return copy;
+        }
+
+        private Room room(Room room) {
+            if (room == null) return null;
+            Room copy = (Room) copied(room);
+            if (copy != null) return copy;
+
+            long stamp = stamp(room);
+            copy = (Room) cached(room, stamp);
+            if (copy == null || !copiesOf(copy.getItems(), room.getItems())) {
+                copy = room.copy();
+                copy.setItems(items(room.getItems()));
+                remember(room, reverse ? stamp(copy) : stamp, copy); // setItems() moved the copy's version on
+            }
+            copied(room, copy);
+            return copy;
+        }
+
+        private Item item(Item item) {
+            Item copy = (Item) copied(item);
+            if (copy != null) return copy;
+            copy = (Item) cached(item, item.getVersion());
+            if (copy == null) {
+                copy = item.copy();
+                remember(item, item.getVersion(), copy);
+            }
+            copied(item, copy);
+            return copy;
+        }
+
+        private Enemy enemy(Enemy enemy) {
+            Enemy copy = (Enemy) copied(enemy);
+            if (copy != null) return copy;
+            copy = (Enemy) cached(enemy, enemy.getVersion());
+            if (copy == null) {
+                copy = enemy.copy();
+                remember(enemy, enemy.getVersion(), copy);
+            }
+            copied(enemy, copy);
+            return copy;
+        }
+
+        private Player player(Player player) {
+            Player copy = (Player) cached(player, player.getVersion());
+            if (copy == null) {
+                copy = player.copy();
+                remember(player, player.getVersion(), copy);
+            }
+            return copy;
+        }
+
+        private Inventory inventory(Inventory inventory) {
+            Inventory copy = (Inventory) cached(inventory, inventory.getVersion());
+            if (copy == null || !copiesOf(copy.getItems(), inventory.getItems())) {
+                copy = inventory.copy();
+                copy.getItems().clear();
+                copy.getItems().addAll(items(inventory.getItems()));
+                remember(inventory, inventory.getVersion(), copy);
+            }
+            return copy;
+        }
+
+        /** Copies a list of live items, or returns {@code null} for none. */
+        private ArrayList<Item> items(ArrayList<Item> live) {
+            if (live == null) return null;
+            ArrayList<Item> items = new ArrayList<Item>(live.size());
+            for (Item item : live) {
+                items.add(item(item));
+            }
+            return items;
+        }
+
+        /** Checks that a copied item list holds this snapshot's copies of the live items, in order. */
+        private boolean copiesOf(ArrayList<Item> copied, ArrayList<Item> live) {
+            if (copied == null || live == null) return copied == live;
+            if (copied.size() != live.size()) return false;
+            for (int i = 0; i < copied.size(); i++) {
+                if (copied.get(i) != item(live.get(i))) return false;
+            }
+            return true;
+        }
+
+        private static long stamp(Room room) {
+            long stamp = room.getVersion();
+            for (Exit exit : room.getExits()) {
+                stamp += exit.getVersion(); // versions only go up, so the sum changes whenever an exit does
+            }
+            return stamp;
+        }
+    }
+
+    public GameRandom getRandom(){
+        return random;
     }
 
     public int getTrial(){
@@ -57,6 +263,10 @@ public class Save implements java.io.Serializable {
         return roomMap;
     }
 
+    public HashMap<String, Item> getItemMap() {
+        return itemMap;
+    }
+
     public Inventory getInventory() {
         return inventory;
     }
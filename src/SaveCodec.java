@@ -0,0 +1,213 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Streams save data through a compressed, checksummed block format.
+ * <p>
+ * A save starts with a magic number and a version, followed by blocks of at most
+ * {@code BLOCK_SIZE} bytes of input. Each block is stored as its uncompressed length, its
+ * compressed length, the CRC32 of the uncompressed bytes, and the Deflate-compressed bytes.
+ * A block with length 0 marks the end of the save, so a truncated file is always detected.
+ * <p>
+ * Blocks are checked as they are read, so a damaged save fails with a
+ * {@code CorruptSaveException} before any of the damaged data is deserialized.
+ */
+public class SaveCodec {
+    /** The compression level used when none is given. Saves are small, so speed matters more. */
+    public static final int DEFAULT_LEVEL = Deflater.BEST_SPEED;
+    private static final int MAGIC = 0x544C5356; // "TLSV"
+    private static final int VERSION = 1;
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private SaveCodec() {}
+
+    /**
+     * Wraps {@code out} so everything written to it is compressed and checksummed.
+     * Closing the returned stream writes the end marker, but leaves {@code out} open so the
+     * caller can sync it to disk first.
+     * @param out - the stream to write the encoded save to.
+     * @param level - the Deflater compression level, from 0 (none) to 9 (smallest).
+     * @return The encoding stream.
+     */
+    public static OutputStream encoder(OutputStream out, int level) throws IOException {
+        return new Encoder(out, level);
+    }
+
+    /**
+     * Wraps {@code in} so reading from it decodes and verifies an encoded save.
+     * @param in - the stream holding the encoded save.
+     * @return The decoding stream.
+     * @throws CorruptSaveException If {@code in} does not hold an encoded save.
+     */
+    public static InputStream decoder(InputStream in) throws IOException {
+        return new Decoder(in);
+    }
+
+    private static class Encoder extends FilterOutputStream {
+        private final DataOutputStream data;
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private byte[] compressed = new byte[BLOCK_SIZE + BLOCK_SIZE / 8 + 64];
+        private int length;
+        private boolean closed;
+
+        private Encoder(OutputStream out, int level) throws IOException {
+            super(out);
+            data = new DataOutputStream(out);
+            deflater = new Deflater(level);
+            data.writeInt(MAGIC);
+            data.writeByte(VERSION);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (length == BLOCK_SIZE) writeBlock();
+            block[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (length == BLOCK_SIZE) writeBlock();
+                int n = Math.min(len, BLOCK_SIZE - length);
+                System.arraycopy(b, off, block, length, n);
+                length += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        /** Only whole blocks are written, so flushing does not end the current one. */
+        @Override
+        public void flush() throws IOException {
+            data.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                if (length > 0) writeBlock();
+                data.writeInt(0);
+                data.flush();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            crc.reset();
+            crc.update(block, 0, length);
+            deflater.reset();
+            deflater.setInput(block, 0, length);
+            deflater.finish();
+            int compressedLength = 0;
+            while (!deflater.finished()) {
+                if (compressedLength == compressed.length) {
+                    byte[] bigger = new byte[compressed.length * 2];
+                    System.arraycopy(compressed, 0, bigger, 0, compressedLength);
+                    compressed = bigger;
+                }
+                compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+            }
+            data.writeInt(length);
+            data.writeInt(compressedLength);
+            data.writeInt((int) crc.getValue());
+            data.write(compressed, 0, compressedLength);
+            length = 0;
+        }
+    }
+
+    private static class Decoder extends InputStream {
+        private final DataInputStream data;
+        private final Inflater inflater = new Inflater();
+        private final CRC32 crc = new CRC32();
+        private byte[] block = new byte[BLOCK_SIZE];
+        private byte[] compressed = new byte[BLOCK_SIZE];
+        private int length;
+        private int position;
+        private boolean ended;
+
+        private Decoder(InputStream in) throws IOException {
+            data = new DataInputStream(in);
+            try {
+                if (data.readInt() != MAGIC) throw new CorruptSaveException("Not a save file.");
+                if (data.readUnsignedByte() != VERSION) throw new CorruptSaveException("Unsupported save version.");
+            } catch (EOFException e) {
+                throw new CorruptSaveException("Save file is empty or truncated.");
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == length && !readBlock()) return -1;
+            return block[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (position == length && !readBlock()) return -1;
+            int n = Math.min(len, length - position);
+            System.arraycopy(block, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return length - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.end();
+            data.close();
+        }
+
+        /** Reads and verifies the next block. Returns false at the end marker. */
+        private boolean readBlock() throws IOException {
+            if (ended) return false;
+            try {
+                int rawLength = data.readInt();
+                if (rawLength == 0) {
+                    ended = true;
+                    return false;
+                }
+                int compressedLength = data.readInt();
+                int expectedCrc = data.readInt();
+                if (rawLength < 0 || rawLength > BLOCK_SIZE || compressedLength < 0 || compressedLength > BLOCK_SIZE * 2) {
+                    throw new CorruptSaveException("Save block header is damaged.");
+                }
+                if (compressedLength > compressed.length) compressed = new byte[compressedLength];
+                data.readFully(compressed, 0, compressedLength);
+
+                inflater.reset();
+                inflater.setInput(compressed, 0, compressedLength);
+                int inflated = inflater.inflate(block, 0, rawLength);
+                if (inflated != rawLength || !inflater.finished()) throw new CorruptSaveException("Save block has the wrong length.");
+                crc.reset();
+                crc.update(block, 0, rawLength);
+                if ((int) crc.getValue() != expectedCrc) throw new CorruptSaveException("Save block checksum does not match.");
+                length = rawLength;
+                position = 0;
+                return true;
+            } catch (EOFException e) {
+                throw new CorruptSaveException("Save file is truncated.");
+            } catch (DataFormatException e) {
+                throw new CorruptSaveException("Save block cannot be decompressed.");
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * A short summary of a save slot, kept in the save index so slots can be listed
+ * without loading the saves themselves.
+ */
+public class SaveInfo implements java.io.Serializable {
+    private String slot;
+    private String roomName;
+    private int health;
+    private int trialsCompleted;
+    private long timestamp;
+
+    public SaveInfo(String slot, String roomName, int health, int trialsCompleted, long timestamp){
+        this.slot = slot;
+        this.roomName = roomName;
+        this.health = health;
+        this.trialsCompleted = trialsCompleted;
+        this.timestamp = timestamp;
+    }
+
+    public String getSlot(){
+        return slot;
+    }
+
+    public String getRoomName(){
+        return roomName;
+    }
+
+    public int getHealth(){
+        return health;
+    }
+
+    public int getTrialsCompleted(){
+        return trialsCompleted;
+    }
+
+    public long getTimestamp(){
+        return timestamp;
+    }
+
+    /**
+     * Returns a one-line description of the slot for listing to the player.
+     * @return The description.
+     */
+    public String describe(){
+        String date = new SimpleDateFormat("yyyy-MM-dd HH:mm").format(new Date(timestamp));
+        return slot + " - " + roomName + " | Health: " + health + " | Trials: " + trialsCompleted + "/8 | " + date;
+    }
+}
@@ -0,0 +1,252 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Manages the named save slots in the save directory.
+ * <p>
+ * Each slot is saved to its own file by its own {@code SaveWriter}. A small index file holds a
+ * {@code SaveInfo} summary of every slot, so the slots can be listed without loading any of them.
+ * The index is updated after a slot's save has been written, under the same kind of lock file
+ * the saves use, so several running copies of the game can share the directory.
+ */
+public class SaveSlots {
+    public static final String DEFAULT_SLOT = "default";
+    private static final String INDEX_NAME = "Index.ser";
+    private static final String SLOT_SUFFIX = ".ser";
+
+    private final File directory;
+    private final Path indexPath;
+    private final boolean fsync;
+    private final HashMap<String, SaveWriter> writers = new HashMap<String, SaveWriter>();
+    private final HashMap<String, CompletableFuture<Void>> indexUpdates = new HashMap<String, CompletableFuture<Void>>(); // the last for each slot
+
+    /**
+     * Creates a SaveSlots for the slots kept in {@code directory}.
+     * @param directory - the save directory, created if it does not exist.
+     * @param fsync - whether saves are forced to the storage device before replacing old ones.
+     */
+    public SaveSlots(String directory, boolean fsync) {
+        this.directory = new File(directory);
+        this.directory.mkdirs();
+        this.indexPath = new File(this.directory, INDEX_NAME).toPath();
+        this.fsync = fsync;
+    }
+
+    /**
+     * Checks that a slot name is safe to use as a file name.
+     * @param slot - the slot name.
+     * @return True if the name can be used.
+     */
+    public static boolean isValidName(String slot) {
+        return slot != null && slot.matches("[a-z0-9_-]{1,32}");
+    }
+
+    /**
+     * Saves the game to a slot in the background, then records the slot in the index.
+     * @param slot - the slot name, see {@code isValidName()}.
+     * @param save - a snapshot of the game state.
+     * @param info - the summary to list for the slot.
+     * @return A future that completes once the save is on disk, or fails with the I/O error.
+     */
+    public CompletableFuture<Void> save(String slot, Save save, SaveInfo info) {
+        CompletableFuture<Void> written = writer(slot).write(save);
+        CompletableFuture<Void> indexed = written.thenRun(() -> {
+            try {
+                updateIndex(slot, info);
+            } catch (IOException e) {
+                System.err.println("ERROR: Could not update the save index!");
+                e.printStackTrace();
+            }
+        });
+        synchronized (this) {
+            indexUpdates.put(slot, indexed);
+        }
+        return written;
+    }
+
+    /**
+     * Loads the full game state saved in a slot.
+     * @param slot - the slot name.
+     * @return The saved state.
+     * @throws java.io.FileNotFoundException If the slot does not exist.
+     */
+    public Save load(String slot) throws IOException, ClassNotFoundException {
+        writer(slot).flush();
+        return (Save) SaveWriter.read(slotPath(slot).toString());
+    }
+
+    /**
+     * Deletes a slot and removes it from the index.
+     * @param slot - the slot name.
+     * @return True if the slot existed.
+     */
+    public boolean clear(String slot) throws IOException {
+        writer(slot).flush();
+        boolean existed;
+        SaveWriter.Guard guard = SaveWriter.lock(slotPath(slot), false);
+        try {
+            existed = Files.deleteIfExists(slotPath(slot));
+        } finally {
+            guard.release();
+        }
+        updateIndex(slot, null);
+        return existed;
+    }
+
+    /**
+     * Lists the saved slots from the index, most recently saved first. Waits for any queued
+     * saves first, so they are listed too.
+     * @return The slot summaries.
+     */
+    public ArrayList<SaveInfo> list() {
+        flush();
+        HashMap<String, SaveInfo> index;
+        try {
+            SaveWriter.Guard guard = SaveWriter.lock(indexPath, true);
+            try {
+                index = readIndex();
+            } finally {
+                guard.release();
+            }
+        } catch (IOException e) {
+            return new ArrayList<SaveInfo>();
+        }
+        ArrayList<SaveInfo> slots = new ArrayList<SaveInfo>(index.values());
+        slots.sort((a, b) -> Long.compare(b.getTimestamp(), a.getTimestamp()));
+        return slots;
+    }
+
+    /**
+     * Imports the one save kept by versions of the game from before save slots, as the default
+     * slot. This is only done while there are no slots at all, and the old file is renamed once
+     * it is imported, so it is never imported twice. A file that cannot be read is left as it is.
+     * @param legacyPath - where those versions kept the save.
+     * @return True if a save was imported.
+     */
+    public boolean importLegacy(String legacyPath) {
+        File legacy = new File(legacyPath);
+        if (!legacy.isFile() || !list().isEmpty()) return false;
+        Save save;
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(legacy)))) {
+            save = (Save) in.readObject(); // those versions wrote the save without SaveCodec
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            System.err.println("ERROR: Could not import the old game save!");
+            e.printStackTrace();
+            return false;
+        }
+        SaveInfo info = new SaveInfo(DEFAULT_SLOT, save.getCurrentRoom().getRoomName(), save.getPlayer().getHealth(), save.getPlayer().getTrialsCompleted(), legacy.lastModified());
+        try {
+            save(DEFAULT_SLOT, save, info).join();
+        } catch (RuntimeException e) {
+            System.err.println("ERROR: Could not import the old game save!");
+            e.printStackTrace();
+            return false;
+        }
+        flush(); // so the slot is in the index before the old file goes
+        if (!legacy.renameTo(new File(legacyPath + ".imported"))) System.err.println("ERROR: Could not rename the old game save after importing it.");
+        return true;
+    }
+
+    /** Blocks until every queued save has been written and recorded in the index. */
+    public void flush() {
+        ArrayList<SaveWriter> current;
+        ArrayList<CompletableFuture<Void>> updates;
+        synchronized (this) {
+            current = new ArrayList<SaveWriter>(writers.values());
+            updates = new ArrayList<CompletableFuture<Void>>(indexUpdates.values());
+        }
+        // Not done while holding the lock: the writers need it to update the index.
+        for (SaveWriter writer : current) {
+            writer.flush();
+        }
+        for (CompletableFuture<Void> update : updates) {
+            update.exceptionally(e -> null).join();
+        }
+    }
+
+    /**
+     * Writes every queued save, then stops the writer threads. The slots cannot be saved to
+     * afterwards.
+     */
+    public void close() {
+        ArrayList<SaveWriter> current;
+        synchronized (this) {
+            current = new ArrayList<SaveWriter>(writers.values());
+            writers.clear();
+        }
+        for (SaveWriter writer : current) {
+            writer.close();
+        }
+    }
+
+    private synchronized SaveWriter writer(String slot) {
+        SaveWriter writer = writers.get(slot);
+        if (writer == null) {
+            writer = new SaveWriter(slotPath(slot).toString(), fsync);
+            writers.put(slot, writer);
+        }
+        return writer;
+    }
+
+    private Path slotPath(String slot) {
+        return new File(directory, slot + SLOT_SUFFIX).toPath();
+    }
+
+    /**
+     * Replaces a slot's entry in the index, or removes it if {@code info} is null.
+     */
+    private synchronized void updateIndex(String slot, SaveInfo info) throws IOException {
+        SaveWriter.Guard guard = SaveWriter.lock(indexPath, false);
+        try {
+            HashMap<String, SaveInfo> index = readIndex();
+            if (info == null) index.remove(slot);
+            else index.put(slot, info);
+            SaveWriter.writeAtomically(indexPath, index, fsync, SaveCodec.DEFAULT_LEVEL);
+        } finally {
+            guard.release();
+        }
+    }
+
+    /** Reads the index. The caller must hold a lock on it. */
+    @SuppressWarnings("unchecked")
+    private HashMap<String, SaveInfo> readIndex() {
+        if (!Files.isRegularFile(indexPath)) return new HashMap<String, SaveInfo>();
+        try {
+            return (HashMap<String, SaveInfo>) SaveWriter.readUnlocked(indexPath);
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            return scanSlots();
+        }
+    }
+
+    /**
+     * Builds the index from the slot files themselves, for when the index file is damaged.
+     * Each slot is loaded to summarise it, so this is slow, but it is only needed once: the
+     * index is rewritten from it the next time a slot is saved or cleared.
+     */
+    private HashMap<String, SaveInfo> scanSlots() {
+        HashMap<String, SaveInfo> index = new HashMap<String, SaveInfo>();
+        File[] files = directory.listFiles();
+        if (files == null) return index;
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(SLOT_SUFFIX) || name.equals(INDEX_NAME)) continue;
+            String slot = name.substring(0, name.length() - SLOT_SUFFIX.length());
+            if (!isValidName(slot)) continue;
+            try {
+                Save save = (Save) SaveWriter.read(file.getPath());
+                index.put(slot, new SaveInfo(slot, save.getCurrentRoom().getRoomName(), save.getPlayer().getHealth(), save.getPlayer().getTrialsCompleted(), file.lastModified()));
+            } catch (IOException | ClassNotFoundException | ClassCastException | NullPointerException e) {
+                // a damaged slot is left out, as it could not be loaded anyway
+            }
+        }
+        return index;
+    }
+}
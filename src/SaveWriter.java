@@ -0,0 +1,246 @@
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes game saves to disk on a background thread, so the game thread never waits on file I/O.
+ * <p>
+ * Saves are encoded with {@code SaveCodec}, so they are compressed and every block is checksummed.
+ * <p>
+ * Each write goes to a temporary file next to the save, which is then renamed over the old one.
+ * A crash in the middle of a write therefore leaves the previous save intact.
+ * <p>
+ * At most one write is kept waiting behind the one in progress. If another write is requested
+ * before the waiting one has started, it replaces it, because only the newest state matters.
+ * <p>
+ * Writes hold an exclusive lock on a {@code .lock} file next to the save, and {@code read()} holds
+ * a shared one, so another running copy of the game cannot read or write the save halfway through.
+ * Games running in the same process take turns on the file the same way. The lock file stays
+ * next to the save, empty, since deleting it safely while others may be waiting on it is not
+ * possible.
+ */
+public class SaveWriter {
+    /** Marker state used by {@code flush()}; it is never written. */
+    private static final Object NO_CHANGE = new Object();
+    /** The in-process locks taken before the file locks, by absolute path of the guarded file. */
+    private static final ConcurrentHashMap<Path, ReentrantLock> LOCAL_LOCKS = new ConcurrentHashMap<Path, ReentrantLock>();
+
+    private final Path target;
+    private final boolean fsync;
+    private final int level;
+    private final ExecutorService executor;
+    private PendingWrite pending;
+
+    /**
+     * Creates a new SaveWriter for the save file at {@code filePath}.
+     * @param filePath - path of the save file.
+     * @param fsync - whether to force each write to the storage device before renaming it.
+     */
+    public SaveWriter(String filePath, boolean fsync) {
+        this(filePath, fsync, SaveCodec.DEFAULT_LEVEL);
+    }
+
+    /**
+     * Creates a new SaveWriter for the save file at {@code filePath}.
+     * @param filePath - path of the save file.
+     * @param fsync - whether to force each write to the storage device before renaming it.
+     * @param level - the compression level, from 0 (none) to 9 (smallest).
+     */
+    public SaveWriter(String filePath, boolean fsync, int level) {
+        this.target = Path.of(filePath);
+        this.fsync = fsync;
+        this.level = level;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Save Writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues {@code state} to be written to the save file.
+     * <p>
+     * The state must not be modified after it is passed in; use {@code Save.snapshot()} to get a
+     * copy of the game state that is safe to hand over.
+     * @param state - the object to save, or {@code null} to clear the save.
+     * @return A future that completes once the state is on disk, or fails with the I/O error.
+     */
+    public synchronized CompletableFuture<Void> write(Object state) {
+        if (pending != null) {
+            pending.state = state;
+            return pending.done;
+        }
+        PendingWrite write = new PendingWrite(state);
+        pending = write;
+        executor.execute(() -> run(write));
+        return write.done;
+    }
+
+    /**
+     * Blocks until every queued write has finished. Errors are left for the futures to report.
+     */
+    public void flush() {
+        CompletableFuture<Void> last;
+        synchronized (this) {
+            last = pending != null ? pending.done : write(NO_CHANGE);
+        }
+        last.exceptionally(e -> null).join();
+    }
+
+    /**
+     * Writes everything queued, then stops the writer thread. Nothing can be written afterwards.
+     */
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Runs on the writer thread. */
+    private void run(PendingWrite write) {
+        Object state;
+        synchronized (this) {
+            if (pending == write) pending = null;
+            state = write.state;
+        }
+        if (state == NO_CHANGE) {
+            write.done.complete(null);
+            return;
+        }
+        try {
+            Guard guard = lock(target, false);
+            try {
+                writeAtomically(target, state, fsync, level);
+            } finally {
+                guard.release();
+            }
+            write.done.complete(null);
+        } catch (IOException | RuntimeException e) {
+            write.done.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Reads the object saved at {@code filePath}, waiting for any other process that is writing it.
+     * @param filePath - path of the save file.
+     * @return The saved object, which may be {@code null}.
+     * @throws CorruptSaveException If the file is truncated or fails its checksums.
+     */
+    public static Object read(String filePath) throws IOException, ClassNotFoundException {
+        Path path = Path.of(filePath);
+        if (!Files.isRegularFile(path)) throw new FileNotFoundException(filePath);
+        Guard guard = lock(path, true);
+        try {
+            return readUnlocked(path);
+        } finally {
+            guard.release();
+        }
+    }
+
+    /**
+     * Reads the object saved at {@code path}. The caller must hold a lock for it.
+     */
+    static Object readUnlocked(Path path) throws IOException, ClassNotFoundException {
+        InputStream decoder = SaveCodec.decoder(new BufferedInputStream(new FileInputStream(path.toFile())));
+        try (ObjectInputStream in = new ObjectInputStream(decoder)) {
+            Object state = in.readObject();
+            // Read up to the end marker, so a save cut off after its last block is still caught.
+            byte[] rest = new byte[512];
+            while (decoder.read(rest, 0, rest.length) != -1) {}
+            return state;
+        }
+    }
+
+    /**
+     * Locks the {@code .lock} file that guards {@code target} against other processes.
+     * <p>
+     * A file lock is held by the whole process, and asking for one the process already holds
+     * fails, so threads of this process first take turns on an in-process lock for the file.
+     * That means two games in one process reading the same file do so one at a time.
+     * @param target - the file to guard.
+     * @param shared - true for a read lock, false for a write lock.
+     * @return The lock, which must be released by the same thread.
+     */
+    static Guard lock(Path target, boolean shared) throws IOException {
+        ReentrantLock local = LOCAL_LOCKS.computeIfAbsent(target.toAbsolutePath().normalize(), path -> new ReentrantLock());
+        local.lock();
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(Path.of(target + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Guard(local, channel.lock(0, Long.MAX_VALUE, shared));
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) channel.close();
+            local.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes {@code state} to a temporary file and renames it over {@code target}.
+     * The caller must hold the write lock for {@code target}.
+     */
+    static void writeAtomically(Path target, Object state, boolean fsync, int level) throws IOException {
+        Path temp = Path.of(target + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temp.toFile())) {
+            ObjectOutputStream out = new ObjectOutputStream(SaveCodec.encoder(fileOut, level));
+            out.writeObject(state);
+            out.close(); // ends the encoding but leaves the file open
+            if (fsync) fileOut.getFD().sync();
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** A lock taken by {@code lock()}, both in this process and on the lock file. */
+    static class Guard {
+        private final ReentrantLock local;
+        private final FileLock file;
+
+        private Guard(ReentrantLock local, FileLock file) {
+            this.local = local;
+            this.file = file;
+        }
+
+        /** Releases the lock. */
+        void release() throws IOException {
+            try {
+                file.channel().close();
+            } finally {
+                local.unlock();
+            }
+        }
+    }
+
+    private static class PendingWrite {
+        private Object state;
+        private final CompletableFuture<Void> done = new CompletableFuture<Void>();
+
+        private PendingWrite(Object state) {
+            this.state = state;
+        }
+    }
+}
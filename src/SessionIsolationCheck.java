@@ -0,0 +1,99 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Checks that games running at the same time in one process do not affect each other.
+ * <p>
+ * Each script is first played alone, to get its transcript. Then many copies of every script are
+ * played at once, each on its own thread, through its own {@code TerminalFrontend} and with its
+ * own state directory, and every transcript must match the one played alone. Run it from the
+ * game's folder, so the content files are found:
+ * <pre>java -cp "bin:lib/*" SessionIsolationCheck [sessions per script]</pre>
+ * It exits with status 1 if any transcript differs.
+ */
+public class SessionIsolationCheck {
+    private static final long SEED = 1;
+    private static final int DEFAULT_SESSIONS = 16;
+    private static final String SAVED = "Game saved!"; // printed by the save writer, so its place in the transcript varies
+    private static final String[] SCRIPTS = {
+        "go east\ngo north\nsave game first\ngo south\nsave load first\nundo\nrewind\ngo northeast\nquit\ny\n",
+        "go west\ngo east\nundo\nundo\ngo east\nsave game second\nsave clear second\nrestart\ny\ngo east\nquit\ny\n",
+        "go east\ngo northeast\ngo north\nhelp\nrewind\ngo east\ngo south\nundo\nquit\ny\n",
+    };
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SESSIONS;
+        Path root = Files.createTempDirectory("zork-sessions");
+        try {
+            String[] expected = new String[SCRIPTS.length];
+            for (int i = 0; i < SCRIPTS.length; i++) {
+                expected[i] = play(SCRIPTS[i], root.resolve("alone-" + i));
+            }
+
+            ExecutorService pool = Executors.newFixedThreadPool(sessions * SCRIPTS.length);
+            ArrayList<Future<String>> transcripts = new ArrayList<Future<String>>();
+            for (int n = 0; n < sessions; n++) {
+                for (int i = 0; i < SCRIPTS.length; i++) {
+                    String script = SCRIPTS[i];
+                    Path directory = root.resolve("session-" + n + "-" + i);
+                    transcripts.add(pool.submit((Callable<String>) () -> play(script, directory)));
+                }
+            }
+            pool.shutdown();
+
+            int failed = 0;
+            for (int t = 0; t < transcripts.size(); t++) {
+                int script = t % SCRIPTS.length;
+                String transcript = transcripts.get(t).get();
+                if (!transcript.equals(expected[script])) {
+                    failed++;
+                    System.err.println("Session " + (t / SCRIPTS.length) + " of script " + script + " differs from playing it alone:");
+                    System.err.println(transcript);
+                }
+            }
+            System.out.println(transcripts.size() + " sessions played at once, " + failed + " differed from playing alone.");
+            if (failed > 0) System.exit(1);
+        } finally {
+            delete(root);
+        }
+    }
+
+    /**
+     * Plays a script through its own frontend until the game ends or the script runs out.
+     * @param script - the commands, one per line.
+     * @param directory - the game's state directory.
+     * @return The transcript.
+     */
+    private static String play(String script, Path directory) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TerminalFrontend frontend = new TerminalFrontend(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)), out);
+        try {
+            frontend.open();
+            new Game(frontend, SEED, directory.toString()).play();
+        } catch (TerminalFrontend.InputEndedException e) {
+        }
+        StringBuilder transcript = new StringBuilder();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            if (!line.trim().equals(SAVED)) transcript.append(line).append('\n');
+        }
+        return transcript.toString();
+    }
+
+    private static void delete(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+import java.util.IdentityHashMap;
+
+/**
+ * Remembers the copies made by earlier snapshots, so a new snapshot can share the copy of any
+ * object that has not changed since. Copies in a snapshot are never modified, so sharing them
+ * between snapshots is safe, and a run of snapshots only costs memory for what changed.
+ * <p>
+ * Objects are matched by identity together with a stamp built from their version counters.
+ * The cache must be cleared whenever the live objects are replaced, such as after a restore.
+ */
+public class SnapshotCache {
+    private final IdentityHashMap<Object, Entry> entries = new IdentityHashMap<Object, Entry>();
+
+    /**
+     * Gets the copy made of {@code live} when its stamp was {@code stamp}.
+     * @return The copy, or {@code null} if there is none or the object has changed since.
+     */
+    public Object get(Object live, long stamp) {
+        Entry entry = entries.get(live);
+        if (entry == null || entry.stamp != stamp) return null;
+        return entry.copy;
+    }
+
+    /** Records the copy made of {@code live} at {@code stamp}. */
+    public void put(Object live, long stamp, Object copy) {
+        entries.put(live, new Entry(stamp, copy));
+    }
+
+    /** Forgets every copy. */
+    public void clear() {
+        entries.clear();
+    }
+
+    private static class Entry {
+        private final long stamp;
+        private final Object copy;
+
+        private Entry(long stamp, Object copy) {
+            this.stamp = stamp;
+            this.copy = copy;
+        }
+    }
+}
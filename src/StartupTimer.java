@@ -0,0 +1,123 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+/**
+ * Times the phases of starting the game, up to the first prompt.
+ * <p>
+ * Phases can run on any thread, and several at once, so each is reported with when it started as
+ * well as how long it took. The first prompt is shown once the game is ready and every phase
+ * started so far has ended; at that point the report is printed to {@code System.err}, if enabled.
+ * Background phases do not hold up the first prompt: one that ends after it is reported on a line
+ * of its own.
+ */
+public class StartupTimer {
+    private final boolean enabled;
+    private final long origin = System.nanoTime();
+    private final long jvmMillis = ManagementFactory.getRuntimeMXBean().getUptime(); // JVM start to now
+    private final ArrayList<Phase> phases = new ArrayList<Phase>(); // guarded by this
+    private int running; // guarded by this
+    private boolean ready; // guarded by this
+    private boolean reported; // guarded by this
+
+    /**
+     * Creates a StartupTimer, counting from now.
+     * @param enabled - whether to print the report.
+     */
+    public StartupTimer(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Starts timing a phase. The first prompt waits for it to end.
+     * @return The time the phase started, to pass to {@code end()}.
+     */
+    public synchronized long start() {
+        running++;
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a phase that has finished.
+     * @param name - what the phase did.
+     * @param started - the time from {@code start()}.
+     */
+    public void end(String name, long started) {
+        long now = System.nanoTime();
+        synchronized (this) {
+            phases.add(new Phase(name, Thread.currentThread().getName(), started - origin, now - started));
+            running--;
+        }
+        report(now);
+    }
+
+    /**
+     * Starts timing a background phase. The first prompt does not wait for it to end.
+     * @return The time the phase started, to pass to {@code endBackground()}.
+     */
+    public long startBackground() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a background phase that has finished. If the report has already been printed, the
+     * phase is printed after it.
+     * @param name - what the phase did.
+     * @param started - the time from {@code startBackground()}.
+     */
+    public void endBackground(String name, long started) {
+        long now = System.nanoTime();
+        Phase phase = new Phase(name, Thread.currentThread().getName(), started - origin, now - started);
+        synchronized (this) {
+            if (!reported) {
+                phases.add(phase);
+                return;
+            }
+        }
+        if (enabled) System.err.print(phase.format() + String.format("  after the first prompt%n"));
+    }
+
+    /** Marks the game as ready for its first command. */
+    public void ready() {
+        synchronized (this) {
+            ready = true;
+        }
+        report(System.nanoTime());
+    }
+
+    /** Prints the report the first time the game is ready with no phase still running. */
+    private void report(long now) {
+        ArrayList<Phase> done;
+        synchronized (this) {
+            if (!ready || running > 0 || reported) return;
+            reported = true;
+            done = new ArrayList<Phase>(phases);
+        }
+        if (!enabled) return;
+        done.sort((a, b) -> Long.compare(a.offset, b.offset));
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Startup: JVM start to main %d ms, main to first prompt %.1f ms%n", jvmMillis, (now - origin) / 1e6));
+        for (Phase phase : done) {
+            report.append(phase.format()).append(String.format("%n"));
+        }
+        System.err.print(report);
+    }
+
+    private static class Phase {
+        private final String name;
+        private final String thread;
+        private final long offset;
+        private final long nanos;
+
+        private Phase(String name, String thread, long offset, long nanos) {
+            this.name = name;
+            this.thread = thread;
+            this.offset = offset;
+            this.nanos = nanos;
+        }
+
+        /** The phase's line in the report, without the line break. */
+        private String format() {
+            return String.format("  at %7.1f ms  %-24s %7.1f ms  (%s)", offset / 1e6, name, nanos / 1e6, thread);
+        }
+    }
+}
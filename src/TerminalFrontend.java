@@ -0,0 +1,309 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Plays the game over standard input and output, for servers, benchmarks and scripted runs.
+ * <p>
+ * Nothing here touches AWT, so the game starts without a display. When the output is a terminal,
+ * styles are shown with ANSI escape codes, and pressing Enter fast-forwards a cutscene. When the
+ * input is not a terminal, commands are echoed into the output so it reads as a transcript, and
+ * cutscenes are fast-forwarded straight away.
+ * <p>
+ * A TerminalFrontend can also be given its own streams, so many games can be played in one
+ * process, each through its own frontend.
+ */
+public class TerminalFrontend implements Frontend {
+    private static final int MAX_QUEUED_COMMANDS = 64;
+    private static final String RESET = "\033[0m";
+    private static final String ECHO_STYLE = "\033[33m";
+    private static final String INFO_STYLE = "\033[3;37m";
+    private static final String ERROR_STYLE = "\033[1;31m";
+    private static final String CLEAR = "\033[H\033[2J";
+    private static final String END_OF_INPUT = new String("end of input"); // compared by identity
+
+    private final InputStream in;
+    private final PrintStream out;
+    private final BlockingQueue<String> inputCommands = new ArrayBlockingQueue<String>(MAX_QUEUED_COMMANDS);
+    private final boolean interactive;
+    private final boolean ansi;
+    private final int columns = envInt("COLUMNS", 80);
+    private final int lines = envInt("LINES", 24);
+    private volatile Runnable skipAction;
+    private volatile boolean inCutscene;
+    private boolean commandsPrinted = true; // only used on the game thread
+    private boolean centered; // guarded by this
+    private final StringBuilder partialLine = new StringBuilder(); // see write(), guarded by this
+    private int partialWidth; // characters in partialLine, not counting escape codes
+
+    /** Creates a TerminalFrontend that plays over standard input and output. */
+    public TerminalFrontend() {
+        this(System.in, new FileOutputStream(FileDescriptor.out), System.console() != null);
+    }
+
+    /**
+     * Creates a TerminalFrontend that plays over the given streams, as a script would.
+     * @param in - where commands are read from, one per line.
+     * @param out - where the output is written.
+     */
+    public TerminalFrontend(InputStream in, OutputStream out) {
+        this(in, out, false);
+    }
+
+    private TerminalFrontend(InputStream in, OutputStream out, boolean interactive) {
+        this.in = in;
+        this.out = new PrintStream(out, false, StandardCharsets.UTF_8);
+        this.interactive = interactive;
+        this.ansi = interactive && System.getenv("NO_COLOR") == null && !"dumb".equals(System.getenv("TERM"));
+    }
+
+    @Override
+    public void open() {
+        Thread reader = new Thread(this::readInput, "Terminal Input");
+        reader.setDaemon(true);
+        reader.start();
+        printInfo("\nStarting...\n");
+    }
+
+    /** Runs on the input thread. Queues each line typed, until the input ends. */
+    private void readInput() {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (interactive) {
+                    Runnable skip = skipAction;
+                    if (skip != null) {
+                        skip.run();
+                        continue;
+                    }
+                    if (inCutscene) continue; // like the window, ignore typing during cutscenes
+                }
+                inputCommands.put(line.trim());
+            }
+        } catch (IOException e) {
+        } catch (InterruptedException e) {
+            return;
+        }
+        try {
+            inputCommands.put(END_OF_INPUT);
+        } catch (InterruptedException e) {
+        }
+    }
+
+    /**
+     * Reads the next line of input, waiting until there is one.
+     * @return The command String.
+     * @throws InputEndedException If the input has ended, which ends the game like closing its window.
+     */
+    @Override
+    public String readCommand() {
+        synchronized (this) {
+            endPartialLine(); // a question asked without a line break is shown before waiting
+            if (interactive) out.print("> ");
+            out.flush();
+        }
+        String command = null;
+        boolean interrupted = false;
+        while (command == null) {
+            try {
+                command = inputCommands.take();
+            } catch (InterruptedException e) {
+                interrupted = true; // there is no sensible command to return, so keep waiting
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (command == END_OF_INPUT) {
+            inputCommands.offer(END_OF_INPUT); // any later read ends the same way
+            throw new InputEndedException();
+        }
+        if (!interactive && commandsPrinted) echo(command);
+        return command;
+    }
+
+    @Override
+    public void println() {
+        println("");
+    }
+
+    @Override
+    public synchronized void println(Object x) {
+        write(x + "\n", Style.PLAIN);
+        out.flush();
+    }
+
+    @Override
+    public synchronized void print(Object x) {
+        write(x + "", Style.PLAIN);
+        out.flush();
+    }
+
+    @Override
+    public synchronized void printStyled(Object x, Style style) {
+        write(x + "", style);
+        out.flush();
+    }
+
+    @Override
+    public void printerr(Object x) {
+        printStyled(x + "\n", Style.ERROR);
+    }
+
+    @Override
+    public void printInfo(Object x) {
+        printStyled(x + "\n", Style.INFO);
+    }
+
+    @Override
+    public void printlnNoScroll(Object x) {
+        println(x);
+    }
+
+    @Override
+    public void printlnNoScroll() {
+        println();
+    }
+
+    /** Prints the image's name in place of the image. */
+    @Override
+    public void printImg(String src) {
+        File file = new File(src);
+        if (!file.isFile()) GameError.fileNotFound(this, src);
+        printInfo("[" + file.getName() + "]");
+    }
+
+    @Override
+    public synchronized void reset() {
+        partialLine.setLength(0);
+        partialWidth = 0;
+        out.print(ansi ? CLEAR : "\n");
+        out.flush();
+    }
+
+    @Override
+    public synchronized void centerText(boolean state) {
+        endPartialLine();
+        centered = state;
+    }
+
+    /** The terminal scrolls by itself, so there is nothing to animate. */
+    @Override
+    public void scrollSmooth(int milisSteps) {
+    }
+
+    /**
+     * Sets what pressing Enter does during a cutscene. When the input is not a terminal, the
+     * action is run straight away, since nobody is watching.
+     */
+    @Override
+    public void onSkip(Runnable action) {
+        skipAction = action;
+        if (action != null && !interactive) action.run();
+    }
+
+    @Override
+    public void cutsceneMode(boolean state) {
+        inCutscene = state;
+        commandsPrinted = !state;
+    }
+
+    @Override
+    public void commandsPrinted(boolean state) {
+        commandsPrinted = state;
+    }
+
+    /** The terminal keeps its own command memory, if any. */
+    @Override
+    public void resetCommands() {
+    }
+
+    @Override
+    public int textLines() {
+        return lines;
+    }
+
+    /** There is no status bar; the info command shows the same. */
+    @Override
+    public void sendGameObj(Game game) {
+    }
+
+    /** Echoes a command into the output, the way the window does. */
+    private synchronized void echo(String command) {
+        write("\n> ", Style.PLAIN);
+        write(command + "\n", Style.ECHO);
+        out.flush();
+    }
+
+    /**
+     * Writes text in a style. While the output is centered, text is held back until its line
+     * ends, so each whole line can be centered. Caller holds the lock.
+     */
+    private void write(String text, Style style) {
+        String code = ansi ? code(style) : null;
+        if (!centered) {
+            out.print(styled(text, code));
+            return;
+        }
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                String rest = text.substring(start);
+                partialLine.append(styled(rest, code));
+                partialWidth += rest.length();
+                return;
+            }
+            String line = text.substring(start, end);
+            int pad = (columns - partialWidth - line.length()) / 2;
+            for (int i = 0; i < pad && partialWidth + line.length() > 0; i++) out.print(' ');
+            endPartialLine();
+            out.print(styled(line, code));
+            out.print('\n');
+            start = end + 1;
+        }
+    }
+
+    /** Writes out any text held back by centering, as it is. Caller holds the lock. */
+    private void endPartialLine() {
+        out.print(partialLine);
+        partialLine.setLength(0);
+        partialWidth = 0;
+    }
+
+    private static String styled(String text, String code) {
+        return code == null || text.isEmpty() ? text : code + text + RESET;
+    }
+
+    private static String code(Style style) {
+        switch (style) {
+            case ECHO: return ECHO_STYLE;
+            case INFO: return INFO_STYLE;
+            case ERROR: return ERROR_STYLE;
+            default: return null;
+        }
+    }
+
+    /** Thrown when a command is read after the input has ended. */
+    public static class InputEndedException extends RuntimeException {
+        private InputEndedException() {
+            super("The input has ended.");
+        }
+    }
+
+    private static int envInt(String name, int fallback) {
+        try {
+            return Integer.parseInt(System.getenv(name));
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+import java.util.Arrays;
+
+/**
+ * Keeps the recent states of the game so the player can undo commands.
+ * <p>
+ * A state is recorded after every command. The states are snapshots taken through a shared
+ * {@code SnapshotCache}, so consecutive states share every object, and every map of objects,
+ * that did not change between them. Recording still visits every room, exit, item and enemy to
+ * compare its version counters, so its time grows with the size of the world, but it only
+ * allocates memory for what the command changed. The states are kept in a ring, so going back any
+ * number of steps only moves its end, whatever the length of the history.
+ * <p>
+ * Only the newest {@code limit} states are kept, but the state the session started from is
+ * always kept so {@code rewind()} can return to it.
+ * <p>
+ * A history can be saved along with the game, so undo still reaches back past a journal
+ * checkpoint after a crash; see {@code copy()}.
+ */
+public class UndoHistory implements java.io.Serializable {
+    public static final int DEFAULT_LIMIT = 100;
+
+    private final Save[] states; // a ring, oldest at head; slots past the end may hold undone states
+    private transient SnapshotCache cache = new SnapshotCache();
+    private int head;
+    private int size;
+    private Save origin;
+
+    public UndoHistory() {
+        this(DEFAULT_LIMIT);
+    }
+
+    /**
+     * @param limit - the most states to keep, not counting the origin.
+     */
+    public UndoHistory(int limit) {
+        this.states = new Save[limit + 1];
+    }
+
+    /**
+     * Gets the cache that snapshots for this history should be taken with.
+     * @return The cache.
+     */
+    public SnapshotCache getCache() {
+        if (cache == null) cache = new SnapshotCache(); // a history read back from disk has none
+        return cache;
+    }
+
+    /**
+     * Returns a copy of this history that is not affected by later commands, for saving in the
+     * background. The states themselves are shared, since they never change; the cache is not
+     * copied.
+     * @return The copy.
+     */
+    public UndoHistory copy() {
+        UndoHistory copy = new UndoHistory(states.length - 1);
+        for (int i = 0; i < size; i++) {
+            copy.states[i] = states[(head + i) % states.length]; // leaves out the undone states
+        }
+        copy.size = size;
+        copy.origin = origin;
+        return copy;
+    }
+
+    /**
+     * Forgets every state. The next state recorded becomes the origin.
+     */
+    public void clear() {
+        Arrays.fill(states, null);
+        head = 0;
+        size = 0;
+        getCache().clear();
+        origin = null;
+    }
+
+    /**
+     * Records the state the game is in after a command.
+     * @param state - a snapshot taken with {@code getCache()}.
+     */
+    public void record(Save state) {
+        if (origin == null) origin = state;
+        if (size == states.length) {
+            head = (head + 1) % states.length; // the oldest is overwritten
+            size--;
+        }
+        states[(head + size) % states.length] = state;
+        size++;
+    }
+
+    /**
+     * Gets the newest state recorded.
+     * @return The state, or {@code null} if there is none.
+     */
+    public Save current() {
+        return size == 0 ? null : states[(head + size - 1) % states.length];
+    }
+
+    /**
+     * Gets the state the session started from, which {@code rewind()} returns to.
+     * @return The state, or {@code null} if nothing has been recorded.
+     */
+    public Save origin() {
+        return origin;
+    }
+
+    /**
+     * Gets how many commands can currently be undone.
+     * @return The number of steps.
+     */
+    public int available() {
+        return Math.max(0, size - 1);
+    }
+
+    /**
+     * Goes back {@code steps} states, forgetting the newer ones.
+     * @param steps - how many commands to undo.
+     * @return The state to restore, or {@code null} if there are not that many to undo.
+     */
+    public Save undo(int steps) {
+        if (steps < 1 || steps > available()) return null;
+        size -= steps; // the undone states are left in the ring until overwritten
+        return current();
+    }
+
+    /**
+     * Goes back to the state the session started from, forgetting every newer one.
+     * @return The state to restore, or {@code null} if nothing has been recorded.
+     */
+    public Save rewind() {
+        if (origin == null) return null;
+        head = 0;
+        size = 1;
+        states[0] = origin;
+        return origin;
+    }
+}
@@ -1,4 +1,5 @@
 public class Weapon extends Item{
+  private static final long serialVersionUID = -1370355181640236113L;
   private int damage;
 
   public Weapon(String name, String description, int damage, int weight) {
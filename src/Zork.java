@@ -1,13 +1,43 @@
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.Arrays;
 
 public class Zork {
+  private static final String USAGE = "Usage: java Zork [--headless] [--seed N] [--startup-report]";
+
+  /**
+   * Starts the game.
+   * <p>
+   * {@code --headless} plays it over standard input and output instead of in a window, as does
+   * running with {@code -Djava.awt.headless=true}. {@code --seed N} fixes the random seed.
+   * {@code --startup-report} prints how long each part of starting took, once the game is ready.
+   * A seed that is missing or not a whole number prints the usage and exits with status 2.
+   */
   public static void main(String[] args) {
-    GUI gui = GUI.getGUI();
+    StartupTimer startup = new StartupTimer(Arrays.asList(args).contains("--startup-report"));
+    boolean headless = "true".equals(System.getProperty("java.awt.headless"));
+    Long seed = null;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--headless")) headless = true;
+      else if (args[i].equals("--seed")) {
+        try {
+          seed = Long.parseLong(args[++i]);
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+          System.err.println("--seed needs a whole number. " + USAGE);
+          System.exit(2);
+        }
+      }
+    }
+
+    String stateDirectory = Game.DEFAULT_STATE_DIRECTORY;
+    Frontend gui = headless ? new TerminalFrontend() : new GUI(startup, stateDirectory);
     try {
-      gui.createWindow();
-      Game game = new Game();
+      gui.open();
+      Game game = new Game(gui, seed != null ? seed : GameRandom.newSeed(), stateDirectory, startup);
       game.play();
+      System.exit(0);
+    } catch (TerminalFrontend.InputEndedException e){
+      System.exit(0);
     } catch (Throwable t){
       gui.printerr("\nGame has crashed.");
       ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -15,4 +45,4 @@ public class Zork {
       gui.printerr("\n" + out.toString());
     }
   }
-}
\ No newline at end of file
+}